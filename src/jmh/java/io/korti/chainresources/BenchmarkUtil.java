@@ -0,0 +1,79 @@
+package io.korti.chainresources;
+
+import io.korti.chainresources.api.blockchain.ITransaction;
+import io.korti.chainresources.api.blockchain.ITransactionInput;
+import io.korti.chainresources.api.blockchain.ITransactionOutput;
+import io.korti.chainresources.api.impl.Util;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class BenchmarkUtil {
+
+    public static KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+            SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
+            keyGen.initialize(2048, random);
+            return keyGen.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Creates transactions that only have an ID, which is all the merkel root needs.
+     */
+    public static List<ITransaction> transactions(int count) {
+        final List<ITransaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            transactions.add(new IdTransaction(Util.toMD5("Transaction " + i)));
+        }
+        return transactions;
+    }
+
+    private static class IdTransaction implements ITransaction {
+
+        private final String id;
+
+        private IdTransaction(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() {
+            return this.id;
+        }
+
+        @Override
+        public List<ITransactionInput> getInputs() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<ITransactionOutput> getOutputs() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean processTransaction() {
+            return true;
+        }
+
+        @Override
+        public void generateSignature(PrivateKey key) {
+        }
+
+        @Override
+        public boolean verifySignature() {
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.BenchmarkUtil;
+import io.korti.chainresources.api.blockchain.ITransaction;
+import io.korti.chainresources.api.blockchain.ITransactionInput;
+import io.korti.chainresources.api.impl.MineCoinBlock;
+import io.korti.chainresources.api.impl.MineCoinBlockchain;
+import io.korti.chainresources.api.impl.Transaction;
+import io.korti.chainresources.api.impl.TransactionInput;
+import io.korti.chainresources.api.impl.TransactionOutput;
+import io.korti.chainresources.api.impl.Util;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds a block worth of signed transactions one by one and as a batch with parallel signature checks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockTransactionsBenchmark {
+
+    @Param({"64", "512"})
+    public int transactionCount;
+
+    private KeyPair sender;
+    private KeyPair receiver;
+
+    private List<ITransaction> transactions;
+
+    @Setup(Level.Trial)
+    public void setupKeys() {
+        this.sender = BenchmarkUtil.generateKeyPair();
+        this.receiver = BenchmarkUtil.generateKeyPair();
+    }
+
+    /**
+     * Transactions spend their inputs and remember their signature check, so every invocation needs new ones.
+     */
+    @Setup(Level.Invocation)
+    public void setupTransactions() {
+        Util.getSignatureCache().clear();  // Same keys and value give the same signature every invocation.
+        final MineCoinBlockchain blockchain = new MineCoinBlockchain();
+        this.transactions = new ArrayList<>(transactionCount);
+        for (int i = 0; i < transactionCount; i++) {
+            final TransactionOutput output = new TransactionOutput(sender.getPublic(), 10f, "Genesis " + i);
+            blockchain.addUTXO(output);
+            final List<ITransactionInput> inputs = new ArrayList<>(Collections.singletonList(
+                    new TransactionInput(output.getID())));
+
+            final Transaction transaction = new Transaction(blockchain, sender.getPublic(), receiver.getPublic(), 5f,
+                    inputs);
+            transaction.generateSignature(sender.getPrivate());
+            this.transactions.add(transaction);
+        }
+    }
+
+    @Benchmark
+    public MineCoinBlock addTransactionsSerial() {
+        final MineCoinBlock block = new MineCoinBlock("A");
+        for (ITransaction transaction : transactions) {
+            block.addTransaction(transaction);
+        }
+        return block;
+    }
+
+    @Benchmark
+    public Map<ITransaction, Boolean> addTransactionsBatch() {
+        return new MineCoinBlock("A").addTransactions(transactions);
+    }
+
+}
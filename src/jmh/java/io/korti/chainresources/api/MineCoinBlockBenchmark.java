@@ -0,0 +1,54 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.api.impl.MineCoinBlock;
+import io.korti.chainresources.api.impl.MineCoinMiner;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MineCoinBlockBenchmark {
+
+    @Param({"1", "2", "3", "4"})
+    public int difficulty;
+
+    private MineCoinMiner miner;
+    private int blockCount;
+
+    @Setup
+    public void setup() {
+        this.miner = new MineCoinMiner();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.miner.shutdown();
+    }
+
+    /**
+     * Every block has a different previous hash so the nonces to find differ between runs.
+     */
+    private MineCoinBlock newBlock() {
+        return new MineCoinBlock(Integer.toHexString(blockCount++));
+    }
+
+    @Benchmark
+    public MineCoinBlock mineBlock() {
+        final MineCoinBlock block = newBlock();
+        while (!block.mineBlock(difficulty));
+        return block;
+    }
+
+    @Benchmark
+    public MineCoinBlock mineBlockParallel() {
+        final MineCoinBlock block = newBlock();
+        miner.mine(block, difficulty);
+        return block;
+    }
+
+}
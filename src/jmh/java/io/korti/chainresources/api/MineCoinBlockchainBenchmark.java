@@ -0,0 +1,53 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.api.impl.MineCoinBlock;
+import io.korti.chainresources.api.impl.MineCoinBlockchain;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MineCoinBlockchainBenchmark {
+
+    private static final int DIFFICULTY = 1;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int chainLength;
+
+    private MineCoinBlockchain blockchain;
+
+    @Setup
+    public void setup() {
+        this.blockchain = new MineCoinBlockchain(DIFFICULTY);
+
+        String prevHash = "0";
+        for (int i = 0; i < chainLength; i++) {
+            final MineCoinBlock block = new MineCoinBlock(prevHash);
+            while (!block.mineBlock(DIFFICULTY));
+            blockchain.addBlock(block);
+            prevHash = block.getHash();
+        }
+    }
+
+    /**
+     * Validates the whole chain, as after loading it from disk.
+     */
+    @Benchmark
+    public boolean revalidate() {
+        return blockchain.revalidate();
+    }
+
+    /**
+     * Validates the chain without new blocks, which only has to look at the validated height.
+     */
+    @Benchmark
+    public boolean validate() {
+        return blockchain.validate();
+    }
+
+}
@@ -0,0 +1,67 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.BenchmarkUtil;
+import io.korti.chainresources.api.blockchain.ITransactionInput;
+import io.korti.chainresources.api.impl.MineCoinBlockchain;
+import io.korti.chainresources.api.impl.Transaction;
+import io.korti.chainresources.api.impl.TransactionInput;
+import io.korti.chainresources.api.impl.TransactionOutput;
+import io.korti.chainresources.api.impl.Util;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionBenchmark {
+
+    @Param({"1", "10"})
+    public int inputCount;
+
+    private KeyPair sender;
+    private KeyPair receiver;
+
+    private Transaction transaction;
+
+    @Setup(Level.Trial)
+    public void setupKeys() {
+        this.sender = BenchmarkUtil.generateKeyPair();
+        this.receiver = BenchmarkUtil.generateKeyPair();
+    }
+
+    /**
+     * A transaction spends its inputs, so every invocation needs a fresh chain and a freshly signed transaction.
+     */
+    @Setup(Level.Invocation)
+    public void setupTransaction() {
+        Util.getSignatureCache().clear();  // Same keys and value give the same signature every invocation.
+        final MineCoinBlockchain blockchain = new MineCoinBlockchain();
+        final List<ITransactionInput> inputs = new ArrayList<>(inputCount);
+        for (int i = 0; i < inputCount; i++) {
+            final TransactionOutput output = new TransactionOutput(sender.getPublic(), 10f, "Genesis " + i);
+            blockchain.addUTXO(output);
+            inputs.add(new TransactionInput(output.getID()));
+        }
+
+        this.transaction = new Transaction(blockchain, sender.getPublic(), receiver.getPublic(), 5f, inputs);
+        this.transaction.generateSignature(sender.getPrivate());
+    }
+
+    @Benchmark
+    public boolean processTransaction() {
+        return transaction.processTransaction();
+    }
+
+    @Benchmark
+    public boolean verifySignature() {
+        return transaction.verifySignature();
+    }
+
+}
@@ -0,0 +1,51 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.BenchmarkUtil;
+import io.korti.chainresources.api.blockchain.ITransaction;
+import io.korti.chainresources.api.impl.Util;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilBenchmark {
+
+    private final String input = "a2c6b4f1e8d0936a57c1b2e3f4a5d6c7" + 1594742400L + 123456 + "9e107d9d372bb6826bd81d3542a419d6";
+
+    @Benchmark
+    public String toMD5() {
+        return Util.toMD5(input);
+    }
+
+    @Benchmark
+    public String toSHA256() {
+        return Util.toSHA256(input);
+    }
+
+    @State(Scope.Thread)
+    public static class MerkelState {
+
+        @Param({"1", "10", "100", "1000", "10000"})
+        public int transactionCount;
+
+        public List<ITransaction> transactions;
+
+        @Setup
+        public void setup() {
+            this.transactions = BenchmarkUtil.transactions(transactionCount);
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String getMerkelRoot(MerkelState state) {
+        return Util.getMerkelRoot(state.transactions);
+    }
+
+}
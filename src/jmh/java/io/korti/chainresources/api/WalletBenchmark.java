@@ -0,0 +1,51 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.BenchmarkUtil;
+import io.korti.chainresources.api.impl.MineCoinBlockchain;
+import io.korti.chainresources.api.impl.TransactionOutput;
+import io.korti.chainresources.api.impl.Wallet;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WalletBenchmark {
+
+    private static final int OTHER_OWNERS = 15;
+
+    @Param({"1000", "10000", "100000"})
+    public int utxoCount;
+
+    private Wallet wallet;
+
+    /**
+     * Every 16th UTXO belongs to the wallet, the others are spread over other owners.
+     */
+    @Setup
+    public void setup() {
+        final MineCoinBlockchain blockchain = new MineCoinBlockchain();
+        this.wallet = new Wallet(blockchain);
+
+        final PublicKey[] owners = new PublicKey[OTHER_OWNERS + 1];
+        owners[0] = wallet.getPublicKey();
+        for (int i = 1; i < owners.length; i++) {
+            owners[i] = BenchmarkUtil.generateKeyPair().getPublic();
+        }
+
+        for (int i = 0; i < utxoCount; i++) {
+            blockchain.addUTXO(new TransactionOutput(owners[i % owners.length], 1f, "Genesis " + i));
+        }
+    }
+
+    @Benchmark
+    public float getBalance() {
+        return wallet.getBalance();
+    }
+
+}
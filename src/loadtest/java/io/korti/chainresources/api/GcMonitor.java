@@ -0,0 +1,120 @@
+package io.korti.chainresources.api;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import io.korti.chainresources.api.impl.LatencyHistogram;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watches the garbage collectors and the heap while the load generator runs.
+ * The collection count and time come from the {@link GarbageCollectorMXBean}s. The single pauses come from the GC
+ * notifications of the JVM, which report the duration of every collection in milliseconds.
+ */
+public class GcMonitor implements NotificationListener {
+
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    private final LatencyHistogram pauses = new LatencyHistogram();
+    private final AtomicLong maxPauseMillis = new AtomicLong();
+
+    private long startCount;
+    private long startMillis;
+    private long startHeap;
+
+    public GcMonitor() {
+        for (GarbageCollectorMXBean collector : this.collectors) {
+            if (collector instanceof NotificationEmitter) {
+                ((NotificationEmitter) collector).addNotificationListener(this, null, null);
+            }
+        }
+    }
+
+    /**
+     * Collects the garbage of the setup and starts to count from here.
+     */
+    public void reset() {
+        System.gc();
+        this.startHeap = this.getHeapUsed();
+        this.startCount = this.getTotalCount();
+        this.startMillis = this.getTotalMillis();
+        this.pauses.reset();
+        this.maxPauseMillis.set(0);
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        final GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        final long millis = info.getGcInfo().getDuration();
+        this.pauses.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        this.maxPauseMillis.accumulateAndGet(millis, Math::max);
+    }
+
+    public long getHeapUsed() {
+        return this.memory.getHeapMemoryUsage().getUsed();
+    }
+
+    public long getStartHeap() {
+        return this.startHeap;
+    }
+
+    public long getCollections() {
+        return this.getTotalCount() - this.startCount;
+    }
+
+    public long getCollectionMillis() {
+        return this.getTotalMillis() - this.startMillis;
+    }
+
+    public LatencyHistogram getPauses() {
+        return this.pauses;
+    }
+
+    public long getMaxPauseMillis() {
+        return this.maxPauseMillis.get();
+    }
+
+    /**
+     * Names of the collectors, for example "G1 Young Generation, G1 Old Generation".
+     */
+    public String getCollectorNames() {
+        final List<String> names = new ArrayList<>(this.collectors.size());
+        this.collectors.forEach(collector -> names.add(collector.getName()));
+        return String.join(", ", names);
+    }
+
+    public void close() {
+        for (GarbageCollectorMXBean collector : this.collectors) {
+            if (collector instanceof NotificationEmitter) {
+                try {
+                    ((NotificationEmitter) collector).removeNotificationListener(this);
+                } catch (Exception ignored) {
+                    // Listener was never added to this collector.
+                }
+            }
+        }
+    }
+
+    private long getTotalCount() {
+        return this.collectors.stream().mapToLong(c -> Math.max(0, c.getCollectionCount())).sum();
+    }
+
+    private long getTotalMillis() {
+        return this.collectors.stream().mapToLong(c -> Math.max(0, c.getCollectionTime())).sum();
+    }
+
+}
@@ -0,0 +1,315 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.api.blockchain.ITransaction;
+import io.korti.chainresources.api.impl.LatencyHistogram;
+import io.korti.chainresources.api.impl.MineCoinBlock;
+import io.korti.chainresources.api.impl.MineCoinBlockchain;
+import io.korti.chainresources.api.impl.MineCoinMiner;
+import io.korti.chainresources.api.impl.SignatureScheme;
+import io.korti.chainresources.api.impl.TransactionOutput;
+import io.korti.chainresources.api.impl.Wallet;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives sustained transaction traffic from many wallets through the API:
+ * {@link Wallet#sendFunds} → {@link MineCoinBlock#addTransaction} → {@link MineCoinMiner} →
+ * {@link MineCoinBlockchain#addBlock}.
+ * <p>
+ * The transactions are sent at a fixed rate. The latencies are measured from the time a transaction was scheduled
+ * for, so a stage that falls behind shows up in the latencies of all transactions that had to wait for it. A block gets
+ * closed when it is full or when the block time is over.
+ * <p>
+ * The keys, senders, receivers and values all come from the seed, so every run with the same seed sends the same
+ * transactions. Where the blocks get closed only stays the same if the block time is 0.
+ * <p>
+ * Arguments, all optional: {@code --wallets 2000 --tps 500 --duration 30 --warmup 5 --block-size 500
+ * --block-millis 1000 --difficulty 1 --workers 1 --balance 1000 --scheme EC --seed 42}
+ */
+public class LoadGenerator {
+
+    private static final float MAX_VALUE = 100f;
+    private static final int VALUE_STEPS = 100_000;     // Different values keep the transaction IDs apart.
+
+    private final Options options;
+    private final Random random;
+    private final MineCoinBlockchain blockchain;
+    private final MineCoinMiner miner;
+    private final GcMonitor gc = new GcMonitor();
+
+    private final List<Wallet> wallets;
+
+    private final LatencyHistogram send = new LatencyHistogram();
+    private final LatencyHistogram add = new LatencyHistogram();
+    private final LatencyHistogram mine = new LatencyHistogram();
+    private final LatencyHistogram connect = new LatencyHistogram();
+    private final LatencyHistogram confirm = new LatencyHistogram();
+
+    private long sent;
+    private long noFunds;
+    private long rejected;
+    private long confirmed;
+    private long blocks;
+    private long blocksRejected;
+    private long maxHeap;
+
+    private long[] pending = new long[1024];    // Scheduled times of the transactions in the open block.
+    private int pendingCount;
+
+    public LoadGenerator(Options options) {
+        this.options = options;
+        this.random = new Random(options.seed);
+        this.blockchain = new MineCoinBlockchain(options.difficulty);
+        this.miner = new MineCoinMiner(options.workers);
+
+        final long start = System.nanoTime();
+        this.wallets = this.createWallets();
+        System.out.printf("Created %d %s wallets in %d ms.%n", options.wallets, options.scheme,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private List<Wallet> createWallets() {
+        final SecureRandom keyRandom;
+        try {
+            keyRandom = SecureRandom.getInstance("SHA1PRNG");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        keyRandom.setSeed(this.options.seed);   // Setting the seed before the first use replaces the system seed.
+
+        final List<Wallet> wallets = new ArrayList<>(this.options.wallets);
+        for (int i = 0; i < this.options.wallets; i++) {
+            final Wallet wallet = new Wallet(this.blockchain, this.options.scheme.generateKeyPair(keyRandom));
+            this.blockchain.addUTXO(new TransactionOutput(wallet.getPublicKey(), this.options.balance, "Load " + i));
+            wallets.add(wallet);
+        }
+        return wallets;
+    }
+
+    public void run() {
+        final MineCoinBlock genesis = new MineCoinBlock("0", this.blockchain.getDifficultyBits());
+        this.miner.mineBits(genesis, this.blockchain.getDifficultyBits());
+        this.blockchain.addBlock(genesis);
+
+        if (this.options.warmupSeconds > 0) {
+            System.out.printf("Warming up for %d s.%n", this.options.warmupSeconds);
+            this.runFor(TimeUnit.SECONDS.toNanos(this.options.warmupSeconds), false);
+            this.reset();
+        }
+        this.gc.reset();
+
+        System.out.printf("Sending %d tx/s for %d s.%n", this.options.tps, this.options.durationSeconds);
+        final long start = System.nanoTime();
+        this.runFor(TimeUnit.SECONDS.toNanos(this.options.durationSeconds), true);
+        final long elapsed = System.nanoTime() - start;
+
+        this.report(elapsed);
+        this.miner.shutdown();
+        this.gc.close();
+    }
+
+    private void runFor(long durationNanos, boolean progress) {
+        final long period = TimeUnit.SECONDS.toNanos(1) / this.options.tps;
+        final long blockNanos = TimeUnit.MILLISECONDS.toNanos(this.options.blockMillis);
+        final long start = System.nanoTime();
+        final long end = start + durationNanos;
+
+        long scheduled = start;
+        long nextProgress = start + TimeUnit.SECONDS.toNanos(1);
+        long lastConfirmed = this.confirmed;
+
+        MineCoinBlock block = this.openBlock();
+        long blockStart = start;
+        while (true) {
+            final long now = System.nanoTime();
+            if (now >= end) {
+                break;
+            }
+            if (this.pendingCount >= this.options.blockSize || (blockNanos > 0 && now - blockStart >= blockNanos)) {
+                this.closeBlock(block);
+                block = this.openBlock();
+                blockStart = System.nanoTime();
+                continue;
+            }
+            if (progress && now >= nextProgress) {
+                this.maxHeap = Math.max(this.maxHeap, this.gc.getHeapUsed());
+                System.out.printf("%3ds  %6d tx/s  chain=%d utxos=%d heap=%d MB%n",
+                        TimeUnit.NANOSECONDS.toSeconds(now - start), this.confirmed - lastConfirmed,
+                        this.blockchain.height(), this.blockchain.getUTXOs().size(), this.gc.getHeapUsed() >> 20);
+                lastConfirmed = this.confirmed;
+                nextProgress += TimeUnit.SECONDS.toNanos(1);
+            }
+            if (now < scheduled) {
+                final long wakeUp = (blockNanos > 0) ? Math.min(scheduled, blockStart + blockNanos) : scheduled;
+                LockSupport.parkNanos(Math.min(wakeUp, end) - now);
+                continue;
+            }
+            this.sendTransaction(block, scheduled);
+            scheduled += period;
+        }
+        this.closeBlock(block);
+    }
+
+    private void sendTransaction(MineCoinBlock block, long scheduled) {
+        final int senderIndex = this.random.nextInt(this.wallets.size());
+        final int receiverIndex = (senderIndex + 1 + this.random.nextInt(this.wallets.size() - 1)) % this.wallets.size();
+        final float value = 1 + this.random.nextInt(VALUE_STEPS) * (MAX_VALUE / VALUE_STEPS);
+        this.sent++;
+
+        final long sendStart = System.nanoTime();
+        final ITransaction transaction = this.wallets.get(senderIndex)
+                .sendFunds(this.wallets.get(receiverIndex).getPublicKey(), value);
+        this.send.recordSince(sendStart);
+        if (transaction == null) {
+            this.noFunds++;
+            return;
+        }
+
+        final long addStart = System.nanoTime();
+        final boolean added = block.addTransaction(transaction);
+        this.add.recordSince(addStart);
+        if (!added) {
+            this.rejected++;
+            return;
+        }
+        if (this.pendingCount == this.pending.length) {
+            this.pending = Arrays.copyOf(this.pending, this.pending.length * 2);
+        }
+        this.pending[this.pendingCount++] = scheduled;
+    }
+
+    private MineCoinBlock openBlock() {
+        return new MineCoinBlock(this.blockchain.lastBlock().getHash(), this.blockchain.getDifficultyBits());
+    }
+
+    private void closeBlock(MineCoinBlock block) {
+        final long mineStart = System.nanoTime();
+        this.miner.mineBits(block, this.blockchain.getDifficultyBits());
+        this.mine.recordSince(mineStart);
+
+        final long connectStart = System.nanoTime();
+        final boolean added = this.blockchain.addBlock(block);
+        final long now = System.nanoTime();
+        this.connect.record(now - connectStart);
+
+        if (added) {
+            this.blocks++;
+            this.confirmed += this.pendingCount;
+            for (int i = 0; i < this.pendingCount; i++) {
+                this.confirm.record(now - this.pending[i]);
+            }
+        } else {
+            this.blocksRejected++;
+            this.blockchain.discardTransactions(block.getTransactions());  // Built here, so they got processed.
+        }
+        this.pendingCount = 0;
+    }
+
+    private void reset() {
+        for (LatencyHistogram histogram : new LatencyHistogram[]{this.send, this.add, this.mine, this.connect,
+                this.confirm}) {
+            histogram.reset();
+        }
+        this.sent = this.noFunds = this.rejected = this.confirmed = this.blocks = this.blocksRejected = 0;
+        this.maxHeap = 0;
+    }
+
+    private void report(long elapsedNanos) {
+        final double seconds = elapsedNanos / 1e9;
+        final long endHeap = this.gc.getHeapUsed();
+        System.gc();
+        final long liveHeap = this.gc.getHeapUsed();
+
+        System.out.println();
+        System.out.printf("Wallets: %d (%s), seed %d, target %d tx/s, blocks of %d tx or %d ms, difficulty %d bits%n",
+                this.options.wallets, this.options.scheme, this.options.seed, this.options.tps,
+                this.options.blockSize, this.options.blockMillis, this.blockchain.getDifficultyBits());
+        System.out.printf("Transactions: sent=%d confirmed=%d rejected=%d no funds=%d%n",
+                this.sent, this.confirmed, this.rejected, this.noFunds);
+        System.out.printf("Throughput: %.1f tx/s confirmed, %.2f blocks/s (%d rejected)%n",
+                this.confirmed / seconds, this.blocks / seconds, this.blocksRejected);
+        System.out.printf("  send     %s%n", this.send);
+        System.out.printf("  add      %s%n", this.add);
+        System.out.printf("  mine     %s%n", this.mine);
+        System.out.printf("  addBlock %s%n", this.connect);
+        System.out.printf("  confirm  %s%n", this.confirm);
+        System.out.printf("Heap: start=%d MB end=%d MB max=%d MB live after GC=%d MB growth=%d MB%n",
+                this.gc.getStartHeap() >> 20, endHeap >> 20, Math.max(this.maxHeap, endHeap) >> 20, liveHeap >> 20,
+                (liveHeap - this.gc.getStartHeap()) >> 20);
+        System.out.printf("GC (%s): %d collections, %d ms, pauses p50=%dms p99=%dms max=%dms%n",
+                this.gc.getCollectorNames(), this.gc.getCollections(), this.gc.getCollectionMillis(),
+                TimeUnit.NANOSECONDS.toMillis(this.gc.getPauses().getPercentileNanos(50)),
+                TimeUnit.NANOSECONDS.toMillis(this.gc.getPauses().getPercentileNanos(99)),
+                this.gc.getMaxPauseMillis());
+    }
+
+    public static void main(String[] args) {
+        new LoadGenerator(Options.parse(args)).run();
+    }
+
+    public static final class Options {
+
+        private int wallets = 2000;
+        private int tps = 500;
+        private int durationSeconds = 30;
+        private int warmupSeconds = 5;
+        private int blockSize = 500;
+        private long blockMillis = 1000;
+        private int difficulty = 1;
+        private int workers = 1;
+        private float balance = 1000f;
+        private SignatureScheme scheme = SignatureScheme.EC;     // RSA key generation would dominate the setup.
+        private long seed = 42;
+
+        public static Options parse(String[] args) {
+            if (args.length % 2 != 0) {
+                throw new IllegalArgumentException("Every argument needs a value, for example --wallets 2000.");
+            }
+            final Map<String, String> values = new HashMap<>();
+            for (int i = 0; i < args.length; i += 2) {
+                if (!args[i].startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown argument " + args[i] + ".");
+                }
+                values.put(args[i].substring(2), args[i + 1]);
+            }
+
+            final Options options = new Options();
+            options.wallets = Integer.parseInt(values.getOrDefault("wallets", String.valueOf(options.wallets)));
+            options.tps = Integer.parseInt(values.getOrDefault("tps", String.valueOf(options.tps)));
+            options.durationSeconds = Integer.parseInt(
+                    values.getOrDefault("duration", String.valueOf(options.durationSeconds)));
+            options.warmupSeconds = Integer.parseInt(
+                    values.getOrDefault("warmup", String.valueOf(options.warmupSeconds)));
+            options.blockSize = Integer.parseInt(values.getOrDefault("block-size", String.valueOf(options.blockSize)));
+            options.blockMillis = Long.parseLong(
+                    values.getOrDefault("block-millis", String.valueOf(options.blockMillis)));
+            options.difficulty = Integer.parseInt(
+                    values.getOrDefault("difficulty", String.valueOf(options.difficulty)));
+            options.workers = Integer.parseInt(values.getOrDefault("workers", String.valueOf(options.workers)));
+            options.balance = Float.parseFloat(values.getOrDefault("balance", String.valueOf(options.balance)));
+            options.scheme = SignatureScheme.valueOf(values.getOrDefault("scheme", options.scheme.name()));
+            options.seed = Long.parseLong(values.getOrDefault("seed", String.valueOf(options.seed)));
+
+            values.keySet().removeAll(Arrays.asList("wallets", "tps", "duration", "warmup", "block-size",
+                    "block-millis", "difficulty", "workers", "balance", "scheme", "seed"));
+            if (!values.isEmpty()) {
+                throw new IllegalArgumentException("Unknown arguments " + values.keySet() + ".");
+            }
+            if (options.wallets < 2 || options.tps < 1 || options.blockSize < 1) {
+                throw new IllegalArgumentException("Needs at least 2 wallets, 1 tx/s and 1 transaction per block.");
+            }
+            return options;
+        }
+
+    }
+
+}
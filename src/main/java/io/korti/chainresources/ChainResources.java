@@ -16,9 +16,12 @@
 
 package io.korti.chainresources;
 
+import io.korti.chainresources.api.impl.Metrics;
 import io.korti.chainresources.client.ClientProxy;
 import io.korti.chainresources.common.IProxy;
+import io.korti.chainresources.common.MiningHandler;
 import io.korti.chainresources.common.ServerProxy;
+import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.fml.DistExecutor;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
@@ -34,12 +37,26 @@ public class ChainResources {
     public static final IProxy proxy = DistExecutor.safeRunForDist(() -> ClientProxy::new, () -> ServerProxy::new);
     public static ChainResources instance;
 
+    private final MiningHandler miningHandler = new MiningHandler();
+
     public ChainResources() {
         ChainResources.instance = this;
         FMLJavaModLoadingContext.get().getModEventBus().addListener(this::setup);
     }
 
     private void setup(final FMLCommonSetupEvent event) {
+        MinecraftForge.EVENT_BUS.register(this.miningHandler);
+    }
+
+    public MiningHandler getMiningHandler() {
+        return this.miningHandler;
+    }
 
+    /**
+     * Writes the current values of all chain metrics to the log.
+     */
+    public static void dumpMetrics() {
+        LOG.info("MineCoin metrics:");
+        Metrics.report().forEach(line -> LOG.info("  {}", line));
     }
 }
@@ -16,6 +16,7 @@
 
 package io.korti.chainresources.api.blockchain;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -62,6 +63,52 @@ public interface IBlock {
      */
     boolean isMined(int difficulty);
 
+    /**
+     * Checks if the block is already mined with a difficulty given in bits instead of whole hex characters.
+     * A difficulty of 4 bits is the same as {@link #isMined(int)} with a difficulty of 1.
+     * @param zeroBits The number of 0 bits the hash should start with.
+     * @return True if the block is mined otherwise false.
+     * @implNote The default implementation reads the hex characters of {@link #getHash()}, blocks that keep their
+     * hash as bytes should check them directly.
+     */
+    default boolean isMinedBits(int zeroBits) {
+        final String hash = this.getHash();
+        if (hash == null || hash.length() * 4 < zeroBits) {
+            return false;
+        }
+        final int chars = zeroBits / 4;
+        for (int i = 0; i < chars; i++) {
+            if (hash.charAt(i) != '0') {
+                return false;
+            }
+        }
+        if (zeroBits % 4 == 0) {
+            return true;
+        }
+        // The rest of the bits has to be 0 in the next character, e.g. 2 bits means a value below 4.
+        final int digit = Character.digit(hash.charAt(chars), 16);
+        return digit >= 0 && digit < (16 >> (zeroBits % 4));
+    }
+
+    /**
+     * Returns the difficulty the block got mined for. The chain checks the block against this difficulty instead of
+     * its current one, so blocks stay valid after the difficulty changed.
+     * @return Difficulty in bits or 0 if the block doesn't record its difficulty.
+     */
+    default int getDifficultyBits() {
+        return 0;
+    }
+
+    /**
+     * Returns the transactions stored on this block in the order they got added.
+     * @return Unmodifiable list of the transactions.
+     * @implNote The default implementation returns an empty list for blocks that don't expose their transactions,
+     * the chain can't connect or undo the transactions of such a block.
+     */
+    default List<ITransaction> getTransactions() {
+        return Collections.emptyList();
+    }
+
     /**
      * Adds a new transaction to store on this block.
      * @param transaction New transaction.
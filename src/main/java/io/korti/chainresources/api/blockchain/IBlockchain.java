@@ -16,7 +16,13 @@
 
 package io.korti.chainresources.api.blockchain;
 
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * The blockchain is used to store the mined blocks in a list as well as the unspent output transactions.
@@ -43,11 +49,56 @@ public interface IBlockchain {
     void removeUTXO(String id);
 
     /**
-     * Returns the current difficulty of this blockchain.
+     * Adds and removes UTXOs in one step, so a reader never sees only a part of the change. Nothing gets changed if
+     * one of the UTXOs to remove doesn't exist (anymore), for example because another transaction already spent it.
+     * @implNote The default implementation uses {@link #addUTXO(ITransactionOutput)} and {@link #removeUTXO(String)}
+     * and is not atomic.
+     * @param added UTXOs to add.
+     * @param removedIds IDs of the UTXOs to remove.
+     * @return True if the change got applied otherwise false.
+     */
+    default boolean updateUTXOs(Collection<ITransactionOutput> added, Collection<String> removedIds) {
+        final Map<String, ITransactionOutput> utxos = this.getUTXOs();
+        if (!removedIds.stream().allMatch(utxos::containsKey)) {
+            return false;
+        }
+        added.forEach(this::addUTXO);
+        removedIds.forEach(this::removeUTXO);
+        return true;
+    }
+
+    /**
+     * Takes back the UTXO changes of processed transactions that didn't get into the main chain, for example because
+     * their block ended up on a side branch. Only the one who built the block knows that its transactions got
+     * processed on this chain, so the chain never does this on its own.
+     * @implNote The default implementation applies the reverse changes with
+     * {@link #updateUTXOs(Collection, Collection)}, starting with the last transaction.
+     * @param transactions Processed transactions in the order they got processed.
+     */
+    default void discardTransactions(List<? extends ITransaction> transactions) {
+        for (int i = transactions.size() - 1; i >= 0; i--) {
+            final ITransaction transaction = transactions.get(i);
+            final List<ITransactionOutput> spent = new ArrayList<>();
+            transaction.getInputs().stream().map(ITransactionInput::getUTXO).filter(Objects::nonNull)
+                    .forEach(spent::add);
+            final List<String> created = new ArrayList<>();
+            transaction.getOutputs().forEach(output -> created.add(output.getID()));
+            this.updateUTXOs(spent, created);
+        }
+    }
+
+    /**
+     * Returns the current difficulty of this blockchain in whole hex characters.
      * @return Difficulty
      */
     int getDifficulty();
 
+    /**
+     * Returns the current difficulty of this blockchain as the number of 0 bits a block hash has to start with.
+     * @return Difficulty in bits
+     */
+    int getDifficultyBits();
+
     /**
      * Returns the min value for a transaction.
      * @return Min value for a transaction
@@ -57,10 +108,38 @@ public interface IBlockchain {
     /**
      * Returns all UTXOs in a map where the UTXO ID is mapped to the UTXO.
      * @implNote The returned map should be immutable. Use {@link java.util.Collections#unmodifiableMap(Map)}.
+     * If it is a snapshot that doesn't change with the chain, callers can iterate it while other threads add
+     * transactions.
      * @return A map with all UTXOs with the ID as the key.
      */
     Map<String, ITransactionOutput> getUTXOs();
 
+    /**
+     * Returns the UTXOs as they were when the block at the height got added to the chain.
+     * @implNote Only the snapshots of recent heights have to be kept.
+     * @param height Height of the block.
+     * @return An immutable map with the UTXOs at the height or null if there is no snapshot for the height.
+     */
+    default Map<String, ITransactionOutput> getUTXOsAtHeight(int height) {
+        return null;
+    }
+
+    /**
+     * Returns the UTXOs that belong to the wallet with the public key, without looking at the UTXOs of other wallets.
+     * @implNote The returned map should be immutable. Use {@link java.util.Collections#unmodifiableMap(Map)}.
+     * @param owner Public key of the wallet.
+     * @return A map with the UTXOs of the wallet with the ID as the key.
+     */
+    Map<String, ITransactionOutput> getUTXOs(PublicKey owner);
+
+    /**
+     * Returns the sum of all UTXOs that belong to the wallet with the public key.
+     * @implNote The balance should be kept up to date on adding and removing UTXOs instead of summing them up.
+     * @param owner Public key of the wallet.
+     * @return Balance of the wallet.
+     */
+    float getBalance(PublicKey owner);
+
     /**
      * Returns the last block of the chain.
      * @return Last block of the chain.
@@ -68,12 +147,57 @@ public interface IBlockchain {
     IBlock lastBlock();
 
     /**
-     * Validates the whole chain.
-     * @implNote The result should be cached to only validate if a new block got added.
+     * Returns the block at the height. The genesis block has the height 0.
+     * @param height Height of the block.
+     * @return Block at the height or null if the chain is not that long.
+     */
+    IBlock getBlock(int height);
+
+    /**
+     * Returns the block with the hash.
+     * @param hash Hash of the block.
+     * @return Block with the hash or null if the chain doesn't have a block with this hash.
+     */
+    IBlock getBlock(String hash);
+
+    /**
+     * Returns the height of the last block of the chain.
+     * @return Height of the last block or -1 if the chain has no blocks.
+     */
+    int height();
+
+    /**
+     * Returns the tips of the chain, the last block of the main chain first and then the last blocks of all side
+     * branches.
+     * @implNote Chains that don't keep side branches only return the tip of the main chain.
+     * @return Tips of the main chain and the side branches, empty if the chain has no blocks.
+     */
+    List<? extends IChainTip> getTips();
+
+    /**
+     * Returns the transactions of the blocks a reorganization removed from the main chain that aren't part of the
+     * new main chain, and forgets them. They should be submitted to the transaction pool again.
+     * @implNote The default implementation is for chains that never reorganize.
+     * @return Removed transactions in the order of their blocks.
+     */
+    default List<ITransaction> takeDisconnectedTransactions() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Validates the blocks that got added since the last successful validation.
+     * @implNote The validated height should be remembered so only the new blocks get checked.
      * @return True if the chain is valid otherwise false.
      */
     boolean validate();
 
+    /**
+     * Validates the whole chain again, including blocks that already got validated. Use this if the blocks could
+     * have changed outside of this chain, for example after loading them from disk.
+     * @return True if the chain is valid otherwise false.
+     */
+    boolean revalidate();
+
     /**
      * Checks if the chain got validated and is valid.
      * @return True if chain is valid otherwise false.
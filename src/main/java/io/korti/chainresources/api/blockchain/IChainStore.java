@@ -0,0 +1,82 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.korti.chainresources.api.blockchain;
+
+/**
+ * The chain store keeps the blocks of a {@link IBlockchain} in the order they got added.
+ * Blocks are appended and read by their height or their hash. Only a reorganization of the chain removes blocks from
+ * the end again.
+ */
+public interface IChainStore {
+
+    /**
+     * Appends the block to the end of the store.
+     * @param block Block to append.
+     * @return Height of the block.
+     */
+    int append(IBlock block);
+
+    /**
+     * Removes the blocks from the height on, so the next block gets appended at the height.
+     * @param size Number of blocks that are kept.
+     */
+    void truncate(int size);
+
+    /**
+     * Returns the block at the height. The first block has the height 0.
+     * @param height Height of the block.
+     * @return Block at the height or null if the store has no block at this height.
+     */
+    IBlock get(int height);
+
+    /**
+     * Returns the block with the hash.
+     * @param hash Hash of the block.
+     * @return Block with the hash or null if the store has no block with this hash.
+     */
+    IBlock get(String hash);
+
+    /**
+     * Returns the height of the block with the hash.
+     * @param hash Hash of the block.
+     * @return Height of the block or -1 if the store has no block with this hash.
+     */
+    int getHeight(String hash);
+
+    /**
+     * Returns the number of blocks in the store.
+     * @return Number of blocks.
+     */
+    int size();
+
+    /**
+     * Returns the last block of the store.
+     * @return Last block or null if the store is empty.
+     */
+    default IBlock last() {
+        return this.get(this.size() - 1);
+    }
+
+    /**
+     * Checks if the store has no blocks.
+     * @return True if the store is empty otherwise false.
+     */
+    default boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+}
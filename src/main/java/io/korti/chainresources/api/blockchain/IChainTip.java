@@ -0,0 +1,53 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.korti.chainresources.api.blockchain;
+
+/**
+ * The last block of the main chain or of a side branch of a {@link IBlockchain}.
+ */
+public interface IChainTip {
+
+    /**
+     * Returns the hash of the last block.
+     * @return Hash of the tip.
+     */
+    String getHash();
+
+    /**
+     * Returns the height the last block has or would have in the main chain.
+     * @return Height of the tip.
+     */
+    int getHeight();
+
+    /**
+     * Returns the height of the last main chain block the branch builds on.
+     * @return Height of the fork, the height of the tip for the main chain.
+     */
+    int getForkHeight();
+
+    /**
+     * Returns the number of blocks of the branch behind the fork.
+     * @return Length of the branch, 0 for the main chain.
+     */
+    int getBranchLength();
+
+    /**
+     * Checks if this is the tip of the main chain.
+     * @return True for the main chain otherwise false.
+     */
+    boolean isMain();
+}
@@ -17,6 +17,8 @@
 package io.korti.chainresources.api.blockchain;
 
 import java.security.PrivateKey;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * The transaction interface is used to transfer coins from one {@link IWallet} to another one.
@@ -29,6 +31,25 @@ public interface ITransaction {
      */
     String getId();
 
+    /**
+     * Returns the inputs that fund this transaction.
+     * @return Inputs of the transaction
+     * @implNote The default implementation returns an empty list, the chain can't store or undo a transaction that
+     * doesn't expose its inputs and outputs.
+     */
+    default List<ITransactionInput> getInputs() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns the outputs that got created on processing this transaction.
+     * @return Outputs of the transaction, empty if the transaction didn't get processed
+     * @implNote The default implementation returns an empty list, see {@link #getInputs()}.
+     */
+    default List<ITransactionOutput> getOutputs() {
+        return Collections.emptyList();
+    }
+
     /**
      * Process the transaction. Transfer the coins from one wallet to another one.
      * @return True if the transaction was successfully processed otherwise false
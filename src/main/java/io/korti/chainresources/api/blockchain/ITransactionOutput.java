@@ -40,6 +40,16 @@ public interface ITransactionOutput {
      */
     float getValue();
 
+    /**
+     * Returns the public key of the wallet this unspent output transaction belongs to.
+     * @return Public key of the receiver wallet
+     * @implNote The default implementation returns null for outputs that only answer {@link #isMine(PublicKey)}.
+     * Such outputs can't be looked up by their owner and can't be written to disk.
+     */
+    default PublicKey getReceiver() {
+        return null;
+    }
+
     /**
      * Checks if this UTXO is part of the wallet with the public key.
      * @param key Public key of the wallet to check
@@ -0,0 +1,59 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.korti.chainresources.api.blockchain;
+
+import java.util.List;
+
+/**
+ * The transaction pool holds transactions that got sent but are not yet stored on a block.
+ * Transactions can be submitted from any thread. Two pending transactions never spend the same output, so every batch
+ * taken from the pool can be added to one block.
+ */
+public interface ITransactionPool {
+
+    /**
+     * Submits a transaction to the pool. It gets rejected if the signature is not valid, if it doesn't spend anything,
+     * if it spends an output that a pending transaction already spends or if the pool is full.
+     * @param transaction Transaction to submit.
+     * @return True if the transaction got added to the pool otherwise false.
+     */
+    boolean submit(ITransaction transaction);
+
+    /**
+     * Takes up to max pending transactions in the order they got submitted and adds them to the block. Outputs spent
+     * by these transactions can be spent by new transactions after this call.
+     * @param block Block to add the transactions to.
+     * @param max Max number of transactions to take.
+     * @return Number of transactions that got successfully added to the block.
+     */
+    int fillBlock(IBlock block, int max);
+
+    /**
+     * Takes up to max pending transactions in the order they got submitted. Outputs spent by these transactions can
+     * be spent by new transactions after this call.
+     * @param max Max number of transactions to take.
+     * @return Taken transactions.
+     */
+    List<ITransaction> drain(int max);
+
+    /**
+     * Returns the number of pending transactions.
+     * @return Number of pending transactions.
+     */
+    int size();
+
+}
@@ -0,0 +1,237 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.korti.chainresources.api.impl;
+
+import io.korti.chainresources.api.blockchain.IBlock;
+import io.korti.chainresources.api.blockchain.IBlockchain;
+import io.korti.chainresources.api.blockchain.ITransaction;
+import io.korti.chainresources.api.blockchain.ITransactionInput;
+import io.korti.chainresources.api.blockchain.ITransactionOutput;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.*;
+
+/**
+ * Compact binary encoding of a {@link MineCoinBlock} and its transactions.
+ * Every public key of a block is written once into a key table and the transactions refer to it by its index.
+ * The hash of a block isn't written, it gets calculated again on decoding.
+ */
+public class BlockCodec {
+
+    private static final byte VERSION = 2;
+    private static final int KEY_CACHE_SIZE = 1024;
+
+    private final IBlockchain blockchain;   // Decoded transactions belong to this chain.
+
+    // Decoding a public key is expensive and the same wallets show up in many blocks.
+    private final Map<ByteBuffer, PublicKey> keyCache = Collections.synchronizedMap(new KeyCache());
+
+    public BlockCodec(IBlockchain blockchain) {
+        this.blockchain = blockchain;
+    }
+
+    public byte[] encode(IBlock block) {
+        if (!(block instanceof MineCoinBlock)) {
+            throw new IllegalArgumentException("Only a MineCoinBlock can be encoded.");
+        }
+        if (block.getPreviousHash() == null) {
+            throw new IllegalArgumentException("A block without a previous hash can't be encoded.");
+        }
+        final MineCoinBlock mineCoinBlock = (MineCoinBlock) block;
+
+        final List<PublicKey> keys = new ArrayList<>();
+        final Map<PublicKey, Integer> keyIndices = new HashMap<>();
+
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            final DataOutputStream transactionsOut = new DataOutputStream(bytes);
+
+            transactionsOut.writeInt(block.getTransactions().size());
+            for (ITransaction transaction : block.getTransactions()) {
+                if (!(transaction instanceof Transaction)) {
+                    throw new IllegalArgumentException("Only a Transaction can be encoded.");
+                }
+                this.writeTransaction(transactionsOut, (Transaction) transaction, keys, keyIndices);
+            }
+            transactionsOut.flush();
+
+            // The key table is only complete after the transactions, but it has to be in front of them.
+            final ByteArrayOutputStream blockBytes = new ByteArrayOutputStream(bytes.size() + 64 + keys.size() * 300);
+            final DataOutputStream out = new DataOutputStream(blockBytes);
+            out.writeByte(VERSION);
+            writeString(out, block.getPreviousHash());
+            out.writeLong(mineCoinBlock.getTimestamp());
+            out.writeInt(mineCoinBlock.getDifficultyBits());
+            out.writeInt(mineCoinBlock.getNonce());
+
+            out.writeInt(keys.size());
+            for (PublicKey key : keys) {
+                writeString(out, key.getAlgorithm());
+                writeBytes(out, key.getEncoded());
+            }
+            bytes.writeTo(out);
+            out.flush();
+
+            return blockBytes.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);  // Can't happen, everything gets written into memory.
+        }
+    }
+
+    private void writeTransaction(DataOutputStream out, Transaction transaction, List<PublicKey> keys,
+                                  Map<PublicKey, Integer> keyIndices) throws IOException {
+        writeString(out, transaction.getId());
+        out.writeInt(keyIndex(transaction.getSender(), keys, keyIndices));
+        out.writeInt(keyIndex(transaction.getReceiver(), keys, keyIndices));
+        out.writeFloat(transaction.getValue());
+        out.writeLong(transaction.getTimestamp());
+        writeBytes(out, transaction.getSignature());
+
+        out.writeInt(transaction.getInputs().size());
+        for (ITransactionInput input : transaction.getInputs()) {
+            writeString(out, input.getTransactionOutputID());
+        }
+        out.writeInt(transaction.getOutputs().size());
+        for (ITransactionOutput output : transaction.getOutputs()) {
+            out.writeInt(keyIndex(output.getReceiver(), keys, keyIndices));
+            out.writeFloat(output.getValue());
+        }
+    }
+
+    private static int keyIndex(PublicKey key, List<PublicKey> keys, Map<PublicKey, Integer> keyIndices) {
+        return keyIndices.computeIfAbsent(key, k -> {
+            keys.add(k);
+            return keys.size() - 1;
+        });
+    }
+
+    /**
+     * Decodes a block that starts at the current position of the buffer. The position is moved behind the block.
+     */
+    public MineCoinBlock decode(ByteBuffer buffer) {
+        final byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unknown block encoding version " + version + ".");
+        }
+        final String prevHash = readString(buffer);
+        final long timestamp = buffer.getLong();
+        final int difficultyBits = buffer.getInt();
+        final int nonce = buffer.getInt();
+
+        final PublicKey[] keys = new PublicKey[buffer.getInt()];
+        for (int i = 0; i < keys.length; i++) {
+            final String algorithm = readString(buffer);
+            keys[i] = this.decodeKey(algorithm, readBytes(buffer));
+        }
+
+        final int transactionCount = buffer.getInt();
+        final List<ITransaction> transactions = new ArrayList<>(transactionCount);
+        for (int i = 0; i < transactionCount; i++) {
+            transactions.add(this.readTransaction(buffer, keys));
+        }
+
+        return new MineCoinBlock(prevHash, timestamp, difficultyBits, nonce, transactions);
+    }
+
+    private Transaction readTransaction(ByteBuffer buffer, PublicKey[] keys) {
+        final String id = readString(buffer);
+        final PublicKey sender = keys[buffer.getInt()];
+        final PublicKey receiver = keys[buffer.getInt()];
+        final float value = buffer.getFloat();
+        final long timestamp = buffer.getLong();
+        final byte[] signature = readBytes(buffer);
+
+        final int inputCount = buffer.getInt();
+        final List<ITransactionInput> inputs = new ArrayList<>(inputCount);
+        for (int i = 0; i < inputCount; i++) {
+            inputs.add(new TransactionInput(readString(buffer)));
+        }
+        final int outputCount = buffer.getInt();
+        final List<ITransactionOutput> outputs = new ArrayList<>(outputCount);
+        for (int i = 0; i < outputCount; i++) {
+            outputs.add(new TransactionOutput(keys[buffer.getInt()], buffer.getFloat(), id));
+        }
+
+        return new Transaction(this.blockchain, id, sender, receiver, value, timestamp, signature, inputs, outputs);
+    }
+
+    private PublicKey decodeKey(String algorithm, byte[] encoded) {
+        final ByteBuffer cacheKey = ByteBuffer.wrap(encoded);
+        final PublicKey cached = this.keyCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        final PublicKey key = toPublicKey(algorithm, encoded);
+        this.keyCache.put(cacheKey, key);
+        return key;
+    }
+
+    static PublicKey toPublicKey(String algorithm, byte[] encoded) {
+        try {
+            return KeyFactory.getInstance(algorithm).generatePublic(new X509EncodedKeySpec(encoded));
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        out.writeShort(value.length);
+        out.write(value);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        return new String(readBytes(buffer), StandardCharsets.UTF_8);
+    }
+
+    static byte[] readBytes(ByteBuffer buffer) {
+        final byte[] value = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(value);
+        return value;
+    }
+
+    /**
+     * Keeps the most recently used keys.
+     */
+    private static final class KeyCache extends LinkedHashMap<ByteBuffer, PublicKey> {
+
+        private static final long serialVersionUID = 1L;
+
+        private KeyCache() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, PublicKey> eldest) {
+            return this.size() > KEY_CACHE_SIZE;
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package io.korti.chainresources.api.impl;
+
+import java.security.KeyPair;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Generates key pairs ahead of time on a low priority background thread, so creating a wallet doesn't have to wait
+ * for the key generation.
+ * The pool holds up to its capacity of key pairs. If it runs empty, {@link #take()} generates the key pair on the
+ * calling thread instead of waiting for the background thread.
+ */
+public class KeyPairPool {
+
+    private final SignatureScheme scheme;
+    private final BlockingQueue<KeyPair> keyPairs;
+    private final Thread generator;
+    private final LongAdder misses = new LongAdder();
+
+    private volatile boolean running = true;
+
+    public KeyPairPool(SignatureScheme scheme, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The pool needs a capacity of at least one key pair.");
+        }
+        this.scheme = scheme;
+        this.keyPairs = new ArrayBlockingQueue<>(capacity);
+
+        this.generator = new Thread(this::fill, "MineCoin KeyPair Generator");
+        this.generator.setDaemon(true);
+        this.generator.setPriority(Thread.MIN_PRIORITY);    // Only uses the time the server doesn't need.
+        this.generator.start();
+    }
+
+    private void fill() {
+        try {
+            while (this.running) {
+                this.keyPairs.put(this.scheme.generateKeyPair());  // Blocks while the pool is full.
+            }
+        } catch (InterruptedException e) {
+            // Shut down.
+        }
+    }
+
+    /**
+     * Takes a pre-generated key pair from the pool or generates one if the pool is empty.
+     * @return A key pair that no one else got.
+     */
+    public KeyPair take() {
+        final KeyPair keyPair = this.keyPairs.poll();
+        if (keyPair != null) {
+            return keyPair;
+        }
+        this.misses.increment();
+        return this.scheme.generateKeyPair();
+    }
+
+    public SignatureScheme getScheme() {
+        return this.scheme;
+    }
+
+    /**
+     * @return Number of pre-generated key pairs in the pool.
+     */
+    public int available() {
+        return this.keyPairs.size();
+    }
+
+    /**
+     * @return How often the pool was empty and the key pair got generated on the calling thread.
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public void shutdown() {
+        this.running = false;
+        this.generator.interrupt();
+        this.keyPairs.clear();
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.korti.chainresources.api.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram. Every bucket counts the values up to the next power of two nanoseconds, so recording is
+ * one leading zero count and two adds and the percentiles are exact up to a factor of two.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = Long.SIZE;   // Values are never negative, so 63 bits and the 0 bucket.
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records the time since the start.
+     * @param startNanos Value of {@link System#nanoTime()} at the start.
+     */
+    public void recordSince(long startNanos) {
+        this.record(System.nanoTime() - startNanos);
+    }
+
+    public void record(long nanos) {
+        final long value = Math.max(0, nanos);
+        this.buckets[BUCKETS - Long.numberOfLeadingZeros(value)].increment();  // Bucket i holds 2^(i-1) to 2^i - 1.
+        this.count.increment();
+        this.totalNanos.add(value);
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    public long getTotalNanos() {
+        return this.totalNanos.sum();
+    }
+
+    public double getMeanNanos() {
+        final long count = this.count.sum();
+        return (count == 0) ? 0 : (double) this.totalNanos.sum() / count;
+    }
+
+    /**
+     * Returns the upper bound of the bucket that holds the percentile.
+     * @param percentile Percentile between 0 and 100.
+     * @return Latency in nanoseconds or 0 if nothing got recorded.
+     */
+    public long getPercentileNanos(double percentile) {
+        final long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return (1L << i) - 1;   // Also right for the last bucket, it overflows to Long.MAX_VALUE.
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public void reset() {
+        for (LongAdder bucket : this.buckets) {
+            bucket.reset();
+        }
+        this.count.reset();
+        this.totalNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%dus p50=%dus p99=%dus", this.getCount(),
+                TimeUnit.NANOSECONDS.toMicros((long) this.getMeanNanos()),
+                TimeUnit.NANOSECONDS.toMicros(this.getPercentileNanos(50)),
+                TimeUnit.NANOSECONDS.toMicros(this.getPercentileNanos(99)));
+    }
+
+}
@@ -0,0 +1,338 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.korti.chainresources.api.impl;
+
+import io.korti.chainresources.api.blockchain.IBlock;
+import io.korti.chainresources.api.blockchain.IBlockchain;
+import io.korti.chainresources.api.blockchain.IChainStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append only store that keeps the blocks of a chain in memory mapped segment files.
+ * <p>
+ * Every segment file has a fixed size and holds records one after another:
+ * | length (int) | CRC32 of the rest (int) | block hash (short length + UTF-8) | block ({@link BlockCodec}) |
+ * A length of 0 marks the end of the records. The length gets written last, so a record that wasn't written
+ * completely is never read.
+ * <p>
+ * On opening, the segments only get mapped and the record headers scanned to build the index of the offsets by
+ * height and hash. A block only gets decoded when it's read. The first broken record ends the chain, the records
+ * behind it and all later segments get dropped, so the heights never have a gap.
+ */
+public class MappedChainStore implements IChainStore, Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    private static final String SEGMENT_PREFIX = "blocks-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES * 2;
+
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final BlockCodec codec;
+
+    private final List<FileChannel> channels = new ArrayList<>();
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private int writePosition = 0;  // Position of the next record in the last segment.
+
+    // Offset of each block, the segment index in the upper and the position in the lower 32 bits.
+    private long[][] offsets = new long[8][];
+    private final Map<String, Integer> heights = new HashMap<>();
+    private int size = 0;
+
+    private IBlock last;    // The last block is read a lot, so it stays decoded.
+
+    public MappedChainStore(Path directory, IBlockchain blockchain) {
+        this(directory, blockchain, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public MappedChainStore(Path directory, IBlockchain blockchain, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.codec = new BlockCodec(blockchain);
+
+        try {
+            Files.createDirectories(directory);
+            final List<Path> files = this.findSegments();
+            for (int i = 0; i < files.size(); i++) {
+                this.mapSegment(files.get(i));
+                if (!this.scanSegment(this.segments.size() - 1)) {
+                    for (Path file : files.subList(i + 1, files.size())) {
+                        Files.delete(file);     // The blocks behind a broken record don't connect anymore.
+                    }
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            this.close();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<Path> findSegments() throws IOException {
+        try (Stream<Path> files = Files.list(this.directory)) {
+            return files.filter(file -> {
+                final String name = file.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private void mapSegment(Path file) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.channels.add(channel);
+        this.segments.add(channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), this.segmentSize)));
+        this.writePosition = 0;
+    }
+
+    /**
+     * Adds the records of the segment to the index up to the end marker or the first broken record.
+     * @return True if the segment ended with the end marker or when it got full, false if a record was broken.
+     */
+    private boolean scanSegment(int segmentIndex) {
+        final MappedByteBuffer segment = this.segments.get(segmentIndex);
+        int position = 0;
+        boolean complete = true;
+
+        while (position + RECORD_HEADER_SIZE <= segment.capacity()) {
+            final int length = segment.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || position + RECORD_HEADER_SIZE + length > segment.capacity()) {
+                complete = false;
+                break;
+            }
+
+            final ByteBuffer record = slice(segment, position + RECORD_HEADER_SIZE, length);
+            if (checksum(record.duplicate()) != segment.getInt(position + Integer.BYTES)) {
+                complete = false;
+                break;  // Broken record, everything behind it gets overwritten by the next append.
+            }
+
+            final String hash = BlockCodec.readString(record);
+            this.addOffset(segmentIndex, position, hash.isEmpty() ? null : hash);
+            position += RECORD_HEADER_SIZE + length;
+        }
+
+        this.writePosition = position;
+        if (position + Integer.BYTES <= segment.capacity()) {
+            segment.putInt(position, 0);
+        }
+        if (!complete) {
+            segment.force();    // The segment ends in front of the broken record from now on.
+        }
+        return complete;
+    }
+
+    @Override
+    public synchronized int append(IBlock block) {
+        final byte[] hash = (block.getHash() == null) ? new byte[0] : block.getHash().getBytes(StandardCharsets.UTF_8);
+        final byte[] encoded = this.codec.encode(block);
+        final int length = Short.BYTES + hash.length + encoded.length;
+
+        if (RECORD_HEADER_SIZE + length > this.segmentSize) {
+            throw new IllegalArgumentException("The block with " + length + " bytes doesn't fit into a segment.");
+        }
+        if (this.segments.isEmpty() || this.writePosition + RECORD_HEADER_SIZE + length >
+                this.segments.get(this.segments.size() - 1).capacity()) {
+            this.newSegment();
+        }
+
+        final MappedByteBuffer segment = this.segments.get(this.segments.size() - 1);
+        final ByteBuffer record = slice(segment, this.writePosition + RECORD_HEADER_SIZE, length);
+        record.putShort((short) hash.length).put(hash).put(encoded);
+        record.flip();
+
+        segment.putInt(this.writePosition + Integer.BYTES, checksum(record));
+        segment.putInt(this.writePosition, length);  // Written last, this commits the record.
+        final int nextPosition = this.writePosition + RECORD_HEADER_SIZE + length;
+        if (nextPosition + Integer.BYTES <= segment.capacity()) {
+            segment.putInt(nextPosition, 0);
+        }
+        segment.force();
+
+        final int height = this.addOffset(this.segments.size() - 1, this.writePosition, block.getHash());
+        this.writePosition = nextPosition;
+        this.last = block;
+        return height;
+    }
+
+    @Override
+    public synchronized void truncate(int size) {
+        if (size < 0 || size > this.size) {
+            throw new IllegalArgumentException("Can't truncate " + this.size + " blocks to " + size + ".");
+        }
+        if (size == this.size) {
+            return;
+        }
+
+        for (int height = size; height < this.size; height++) {
+            final ByteBuffer record = this.record(height);
+            final String hash = BlockCodec.readString(record);
+            if (!hash.isEmpty()) {
+                this.heights.remove(hash, height);
+            }
+        }
+
+        final long offset = this.offsets[size >>> CHUNK_BITS][size & CHUNK_MASK];
+        final int segmentIndex = (int) (offset >>> 32);
+        final MappedByteBuffer segment = this.segments.get(segmentIndex);
+        segment.putInt((int) offset, 0);    // Ends the records in front of the first removed block.
+        segment.force();
+
+        // The segments behind only hold removed blocks.
+        while (this.segments.size() > segmentIndex + 1) {
+            final int last = this.segments.size() - 1;
+            this.segments.remove(last);
+            try {
+                this.channels.remove(last).close();
+                Files.deleteIfExists(this.segmentFile(last));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        this.writePosition = (int) offset;
+        this.size = size;
+        this.last = null;
+    }
+
+    private void newSegment() {
+        try {
+            this.mapSegment(this.segmentFile(this.segments.size()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path segmentFile(int segmentIndex) {
+        return this.directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segmentIndex, SEGMENT_SUFFIX));
+    }
+
+    private int addOffset(int segmentIndex, int position, String hash) {
+        final int height = this.size;
+        final int chunk = height >>> CHUNK_BITS;
+
+        if (chunk == this.offsets.length) {
+            this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2);
+        }
+        if (this.offsets[chunk] == null) {
+            this.offsets[chunk] = new long[CHUNK_SIZE];
+        }
+
+        this.offsets[chunk][height & CHUNK_MASK] = ((long) segmentIndex << 32) | position;
+        if (hash != null) {
+            this.heights.put(hash, height);
+        }
+        this.size++;
+        return height;
+    }
+
+    @Override
+    public synchronized IBlock get(int height) {
+        if (height < 0 || height >= this.size) {
+            return null;
+        }
+        if (height == this.size - 1 && this.last != null) {
+            return this.last;
+        }
+
+        final ByteBuffer record = this.record(height);
+        BlockCodec.readBytes(record);   // Skips the hash, it gets calculated again.
+        final IBlock block = this.codec.decode(record);
+
+        if (height == this.size - 1) {
+            this.last = block;
+        }
+        return block;
+    }
+
+    /**
+     * Returns the record of the block at the height, it starts with the hash of the block.
+     */
+    private ByteBuffer record(int height) {
+        final long offset = this.offsets[height >>> CHUNK_BITS][height & CHUNK_MASK];
+        final MappedByteBuffer segment = this.segments.get((int) (offset >>> 32));
+        final int position = (int) offset;
+        return slice(segment, position + RECORD_HEADER_SIZE, segment.getInt(position));
+    }
+
+    @Override
+    public IBlock get(String hash) {
+        return this.get(this.getHeight(hash));
+    }
+
+    @Override
+    public synchronized int getHeight(String hash) {
+        final Integer height = this.heights.get(hash);
+        return (height == null) ? -1 : height;
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.size;
+    }
+
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (FileChannel channel : this.channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Closing the other channels is more important.
+            }
+        }
+        this.channels.clear();
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+        final ByteBuffer slice = buffer.duplicate();
+        slice.limit(position + length).position(position);
+        return slice.slice();
+    }
+
+    private static int checksum(ByteBuffer buffer) {
+        final CRC32 crc = new CRC32();
+        crc.update(buffer);
+        return (int) crc.getValue();
+    }
+
+}
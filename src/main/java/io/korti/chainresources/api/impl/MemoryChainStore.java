@@ -0,0 +1,105 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.korti.chainresources.api.impl;
+
+import io.korti.chainresources.api.blockchain.IBlock;
+import io.korti.chainresources.api.blockchain.IChainStore;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append only store that keeps the blocks of a chain on the heap.
+ * The blocks are kept in chunks of a fixed size. Growing the store only adds a chunk, so blocks never get copied
+ * and a block can be read by its height in O(1). Blocks can also be looked up by their hash.
+ * Only one thread may append or truncate at a time, but any thread can read. A block is written before the volatile
+ * size gets increased, so every reader that sees the new size also sees the block.
+ */
+public class MemoryChainStore implements IChainStore {
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private volatile IBlock[][] chunks = new IBlock[8][];
+    private final Map<String, Integer> heights = new ConcurrentHashMap<>();
+    private volatile int size = 0;
+
+    @Override
+    public int append(IBlock block) {
+        final int height = this.size;
+        final int chunk = height >>> CHUNK_BITS;
+
+        IBlock[][] chunks = this.chunks;
+        if (chunk == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunks.length * 2);  // Only copies the chunk references.
+        }
+        if (chunks[chunk] == null) {
+            chunks[chunk] = new IBlock[CHUNK_SIZE];
+        }
+        chunks[chunk][height & CHUNK_MASK] = block;
+        this.chunks = chunks;
+        if (block.getHash() != null) {
+            this.heights.put(block.getHash(), height);
+        }
+        this.size = height + 1;
+        return height;
+    }
+
+    @Override
+    public void truncate(int size) {
+        final int oldSize = this.size;
+        if (size < 0 || size > oldSize) {
+            throw new IllegalArgumentException("Can't truncate " + oldSize + " blocks to " + size + ".");
+        }
+        this.size = size;   // Readers don't see the removed blocks anymore before they get cleared.
+        final IBlock[][] chunks = this.chunks;
+        for (int height = size; height < oldSize; height++) {
+            final IBlock block = chunks[height >>> CHUNK_BITS][height & CHUNK_MASK];
+            if (block.getHash() != null) {
+                this.heights.remove(block.getHash(), height);
+            }
+            chunks[height >>> CHUNK_BITS][height & CHUNK_MASK] = null;
+        }
+    }
+
+    @Override
+    public IBlock get(int height) {
+        if (height < 0 || height >= this.size) {     // Reading the size first makes the block visible.
+            return null;
+        }
+        return this.chunks[height >>> CHUNK_BITS][height & CHUNK_MASK];
+    }
+
+    @Override
+    public IBlock get(String hash) {
+        return this.get(this.getHeight(hash));
+    }
+
+    @Override
+    public int getHeight(String hash) {
+        final Integer height = this.heights.get(hash);
+        return (height == null) ? -1 : height;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+}
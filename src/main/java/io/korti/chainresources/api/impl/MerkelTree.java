@@ -0,0 +1,131 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.korti.chainresources.api.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Binary merkel tree over SHA-256 hashes. Every layer is half as long as the one below. If a layer has an odd
+ * number of nodes the last node gets paired with itself.
+ * Appending a leaf only recalculates the right most path to the root, so it costs O(log n) hashes.
+ */
+public class MerkelTree {
+
+    private final List<List<byte[]>> layers = new ArrayList<>();
+
+    public MerkelTree() {
+        this.layers.add(new ArrayList<>());
+    }
+
+    /**
+     * Builds the whole tree at once, which only needs n - 1 hashes.
+     * @param leaves Leaf hashes in order.
+     */
+    public MerkelTree(List<byte[]> leaves) {
+        List<byte[]> layer = new ArrayList<>(leaves);
+        this.layers.add(layer);
+
+        while (layer.size() > 1) {
+            List<byte[]> upperLayer = new ArrayList<>((layer.size() + 1) / 2);
+            for (int i = 0; i < layer.size(); i += 2) {
+                upperLayer.add(Util.sha256(layer.get(i), layer.get(Math.min(i + 1, layer.size() - 1))));
+            }
+            this.layers.add(upperLayer);
+            layer = upperLayer;
+        }
+    }
+
+    /**
+     * Appends a leaf and updates the path from it to the root.
+     * @param leaf Leaf hash.
+     */
+    public void add(byte[] leaf) {
+        int index = this.layers.get(0).size();
+        this.layers.get(0).add(leaf);
+
+        for (int level = 0; this.layers.get(level).size() > 1; level++) {
+            if (level + 1 == this.layers.size()) {
+                this.layers.add(new ArrayList<>());
+            }
+            final List<byte[]> layer = this.layers.get(level);
+            final List<byte[]> upperLayer = this.layers.get(level + 1);
+
+            final int parent = index >>> 1;
+            final int left = parent << 1;
+            final byte[] hash = Util.sha256(layer.get(left), layer.get(Math.min(left + 1, layer.size() - 1)));
+
+            if (parent < upperLayer.size()) {
+                upperLayer.set(parent, hash);
+            } else {
+                upperLayer.add(hash);
+            }
+            index = parent;
+        }
+    }
+
+    /**
+     * Returns the root hash or null if the tree has no leaves.
+     */
+    public byte[] getRoot() {
+        final List<byte[]> top = this.layers.get(this.layers.size() - 1);
+        return top.isEmpty() ? null : top.get(0);
+    }
+
+    public int size() {
+        return this.layers.get(0).size();
+    }
+
+    /**
+     * Returns the sibling hashes from the leaf up to the root, which prove that the leaf is part of the tree.
+     * @param index Index of the leaf.
+     * @return Sibling hashes, starting at the leaf layer.
+     */
+    public List<byte[]> getProof(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Leaf " + index + " is not part of the tree.");
+        }
+
+        final List<byte[]> proof = new ArrayList<>(this.layers.size() - 1);
+        for (int level = 0; level < this.layers.size() - 1; level++) {
+            final List<byte[]> layer = this.layers.get(level);
+            proof.add(layer.get(Math.min(index ^ 1, layer.size() - 1)));
+            index >>>= 1;
+        }
+        return Collections.unmodifiableList(proof);
+    }
+
+    /**
+     * Checks a proof from {@link #getProof(int)} against a root hash.
+     * @param leaf Leaf hash.
+     * @param index Index of the leaf.
+     * @param proof Sibling hashes, starting at the leaf layer.
+     * @param root Root hash of the tree.
+     * @return True if the leaf is part of the tree with the root otherwise false.
+     */
+    public static boolean verifyProof(byte[] leaf, int index, List<byte[]> proof, byte[] root) {
+        byte[] hash = leaf;
+        for (byte[] sibling : proof) {
+            hash = ((index & 1) == 0) ? Util.sha256(hash, sibling) : Util.sha256(sibling, hash);
+            index >>>= 1;
+        }
+        return Arrays.equals(hash, root);
+    }
+
+}
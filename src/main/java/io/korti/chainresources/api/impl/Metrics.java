@@ -0,0 +1,150 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.korti.chainresources.api.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters and latency histograms of the hot paths of the chain. Everything is based on {@link LongAdder}s, so
+ * recording never blocks and costs about as much as an uncontended add.
+ * The values are global for the whole JVM. {@link #report()} formats all of them, for example to write them to a log.
+ */
+public final class Metrics {
+
+    public enum Counter {
+        HASH_ATTEMPTS("Hash attempts"),
+        BLOCKS_MINED("Blocks mined"),
+        BLOCKS_ADDED("Blocks added"),
+        BLOCKS_REJECTED("Blocks rejected"),
+        BLOCKS_DISCONNECTED("Blocks disconnected by reorganizations"),
+        CHAIN_REORGANIZATIONS("Chain reorganizations"),
+        ORPHANS_ADDED("Orphan blocks kept"),
+        ORPHANS_CONNECTED("Orphan blocks connected"),
+        ORPHANS_EVICTED("Orphan blocks evicted"),
+        TRANSACTIONS_SENT("Transactions sent"),
+        TRANSACTIONS_NOT_ENOUGH_FUNDS("Transactions not sent, not enough funds"),
+        TRANSACTIONS_PROCESSED("Transactions processed"),
+        TRANSACTIONS_INVALID_SIGNATURE("Transactions rejected, invalid signature"),
+        TRANSACTIONS_FUNDS_TOO_LOW("Transactions rejected, funds below min value"),
+        TRANSACTIONS_INPUTS_SPENT("Transactions rejected, inputs already spent"),
+        UTXO_COMMIT_RETRIES("UTXO commit retries"),
+        UTXO_SNAPSHOTS_WRITTEN("UTXO snapshots written"),
+        UTXO_SNAPSHOTS_FAILED("UTXO snapshots failed"),
+        LOG_RECORDS("Log records"),
+        LOG_FLUSHES("Log flushes");
+
+        private final String description;
+        private final LongAdder adder = new LongAdder();
+
+        Counter(String description) {
+            this.description = description;
+        }
+
+        public void increment() {
+            this.adder.increment();
+        }
+
+        public void add(long value) {
+            this.adder.add(value);
+        }
+
+        public long get() {
+            return this.adder.sum();
+        }
+
+        public String getDescription() {
+            return this.description;
+        }
+    }
+
+    public enum Latency {
+        SIGNATURE_VERIFY("Signature verify"),
+        BLOCK_ADD("Block add"),
+        VALIDATION("Validation"),
+        UTXO_SNAPSHOT("UTXO snapshot write"),
+        LOG_FLUSH("Log flush");
+
+        private final String description;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        Latency(String description) {
+            this.description = description;
+        }
+
+        public void recordSince(long startNanos) {
+            this.histogram.recordSince(startNanos);
+        }
+
+        public LatencyHistogram getHistogram() {
+            return this.histogram;
+        }
+
+        public String getDescription() {
+            return this.description;
+        }
+    }
+
+    // Values that are read when the report gets made, like the UTXO set size of a chain.
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Registers a value that gets read for every report. A gauge with the same name gets replaced.
+     */
+    public static void registerGauge(String name, LongSupplier gauge) {
+        GAUGES.put(name, gauge);
+    }
+
+    public static void unregisterGauge(String name) {
+        GAUGES.remove(name);
+    }
+
+    /**
+     * Returns one line for every counter, gauge and histogram.
+     */
+    public static List<String> report() {
+        final List<String> lines = new ArrayList<>();
+        for (Counter counter : Counter.values()) {
+            lines.add(counter.getDescription() + ": " + counter.get());
+        }
+        GAUGES.forEach((name, gauge) -> lines.add(name + ": " + gauge.getAsLong()));
+        for (Latency latency : Latency.values()) {
+            lines.add(latency.getDescription() + ": " + latency.getHistogram());
+        }
+        return lines;
+    }
+
+    /**
+     * Sets all counters and histograms back to 0, the gauges stay registered.
+     */
+    public static void reset() {
+        for (Counter counter : Counter.values()) {
+            counter.adder.reset();
+        }
+        for (Latency latency : Latency.values()) {
+            latency.histogram.reset();
+        }
+    }
+
+}
@@ -20,35 +20,88 @@ import io.korti.chainresources.api.blockchain.IBlock;
 import io.korti.chainresources.api.blockchain.IBlockchain;
 import io.korti.chainresources.api.blockchain.ITransaction;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoField;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * The hash of a block is the MD5 hash of its binary header:
+ * | prev hash length (int) | prev hash (UTF-8) | timestamp (long) | difficulty bits (int) | merkel root (32 bytes) |
+ * | nonce (int) |
+ * The difficulty is part of the header, so the target a block got mined for can't be changed afterwards.
+ * Everything in front of the nonce stays the same while mining, so it gets hashed once into a digest (the midstate)
+ * and each mining attempt only clones that digest and feeds the four nonce bytes.
+ */
 public class MineCoinBlock implements IBlock {
 
+    private static final int MERKEL_ROOT_LENGTH = 32;
+
     private final String prevHash;
     private final long timestamp;
+    private final int difficultyBits;
 
     private final List<ITransaction> transactions = new ArrayList<>();
+    private final MerkelTree merkelTree = new MerkelTree();
 
-    private String hash;
+    private volatile byte[] hash;
+    private volatile HexHash hexHash;   // Hex form of the hash, only created if someone asks for it.
     private int nonce;
     private boolean updateMerkel = false;
 
-    private String merkelRoot = "";
-    private String checkCache = "";
+    private MessageDigest midstate;     // Digest with everything absorbed up to the nonce.
 
     public MineCoinBlock(String prevHash) {
+        this(prevHash, 0);
+    }
+
+    /**
+     * @param difficultyBits Difficulty the block gets mined for, as the number of 0 bits the hash has to start with.
+     */
+    public MineCoinBlock(String prevHash, int difficultyBits) {
         this.prevHash = prevHash;
         this.timestamp = LocalDateTime.now().getLong(ChronoField.EPOCH_DAY);
+        this.difficultyBits = difficultyBits;
 
-        this.hash = this.calculateHash();   // This should always be the last statement.
+        this.hash = this.calculateHashBytes();   // This should always be the last statement.
     }
 
+    /**
+     * Restores an already mined block, for example after reading it from disk. The transactions don't get processed
+     * again.
+     */
+    MineCoinBlock(String prevHash, long timestamp, int difficultyBits, int nonce, List<ITransaction> transactions) {
+        this.prevHash = prevHash;
+        this.timestamp = timestamp;
+        this.difficultyBits = difficultyBits;
+        this.nonce = nonce;
+        for (ITransaction transaction : transactions) {
+            this.transactions.add(transaction);
+            this.merkelTree.add(Util.toMerkelLeaf(transaction));
+        }
+
+        this.hash = this.calculateHashBytes();   // This should always be the last statement.
+    }
+
+    /**
+     * Returns the hex form of the hash. It is only encoded again after the hash bytes changed, so a finished block
+     * encodes its hash once and the mining loop doesn't encode at all.
+     */
     @Override
     public String getHash() {
-        return this.hash;
+        final byte[] hash = this.hash;
+        HexHash hexHash = this.hexHash;
+        if (hexHash == null || hexHash.bytes != hash) {
+            hexHash = new HexHash(hash, Util.toHex(hash));
+            this.hexHash = hexHash;
+        }
+        return hexHash.hex;
     }
 
     @Override
@@ -58,33 +111,99 @@ public class MineCoinBlock implements IBlock {
 
     @Override
     public String calculateHash() {
-        if (merkelRoot.isEmpty() || updateMerkel) {
-            merkelRoot = Util.getMerkelRoot(this.transactions);
+        return Util.toHex(this.calculateHashBytes());
+    }
+
+    byte[] calculateHashBytes() {
+        if (midstate == null || updateMerkel) {
+            midstate = this.absorbHeader();
             updateMerkel = false;
         }
 
-        return Util.toMD5(prevHash + timestamp + nonce + merkelRoot);
+        return this.calculateHashBytes(this.nonce);
+    }
+
+    /**
+     * Calculates the hash for the given nonce without changing the state of the block.
+     * The midstate has to be up to date before calling this, so it is safe to call from multiple threads at once.
+     */
+    byte[] calculateHashBytes(int nonce) {
+        MessageDigest digest = Util.cloneDigest(this.midstate);
+        digest.update((byte) (nonce >>> 24));
+        digest.update((byte) (nonce >>> 16));
+        digest.update((byte) (nonce >>> 8));
+        digest.update((byte) nonce);
+        return digest.digest();
+    }
+
+    private MessageDigest absorbHeader() {
+        byte[] prevHashBytes = prevHash.getBytes(StandardCharsets.UTF_8);
+        byte[] merkelRoot = this.merkelTree.getRoot();
+
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + prevHashBytes.length + Long.BYTES + Integer.BYTES
+                + MERKEL_ROOT_LENGTH);
+        header.putInt(prevHashBytes.length).put(prevHashBytes).putLong(timestamp).putInt(difficultyBits);
+        if (merkelRoot != null) {
+            header.put(merkelRoot);
+        }   // Without transactions the merkel root stays zeroed.
+        header.rewind();
+
+        MessageDigest digest = Util.getDigest("MD5");
+        digest.update(header);
+        return Util.cloneDigest(digest);    // The digest of Util belongs to the thread, the block needs its own copy.
+    }
+
+    /**
+     * Sets the nonce and the matching hash in one step, so a reader never sees a hash from a different nonce.
+     */
+    synchronized void publishNonce(int nonce, byte[] hash) {
+        this.nonce = nonce;
+        this.hash = hash;
+    }
+
+    int getNonce() {
+        return this.nonce;
     }
 
     @Override
-    public boolean mineBlock(int difficulty) {
+    public synchronized boolean mineBlock(int difficulty) {
         if (isMined(difficulty)) {
             return true;    // Block already minded. It should not be mined again if it's already mined valid mined for once.
         }
 
         nonce++;
-        this.hash = this.calculateHash();
-        return isMined(difficulty);
+        this.hash = this.calculateHashBytes();
+        Metrics.Counter.HASH_ATTEMPTS.increment();
+        if (isMined(difficulty)) {
+            Metrics.Counter.BLOCKS_MINED.increment();
+            return true;
+        }
+        return false;
     }
 
     @Override
     public boolean isMined(int difficulty) {
-        if (checkCache.length() != difficulty) {
-            checkCache = new String(new char[difficulty]).replace("\0", "0");
-        }
+        // Block is mined if the hash starts with {difficulty} 0s, every hex character of the hash stands for 4 bits.
+        return this.isMinedBits(difficulty * 4);
+    }
 
-        // Block is mined if the hash starts with {difficulty} 0s.
-        return this.hash.substring(0, difficulty).equals(checkCache);
+    @Override
+    public boolean isMinedBits(int zeroBits) {
+        return Util.hasLeadingZeroBits(this.hash, zeroBits);
+    }
+
+    @Override
+    public int getDifficultyBits() {
+        return this.difficultyBits;
+    }
+
+    @Override
+    public List<ITransaction> getTransactions() {
+        return Collections.unmodifiableList(this.transactions);
+    }
+
+    long getTimestamp() {
+        return this.timestamp;
     }
 
     @Override
@@ -97,9 +216,75 @@ public class MineCoinBlock implements IBlock {
             return false;
         }
 
-        this.transactions.add(transaction);
-        this.updateMerkel = true;
+        synchronized (this) {
+            this.transactions.add(transaction);
+            this.merkelTree.add(Util.toMerkelLeaf(transaction));
+            this.updateMerkel = true;
+            this.hash = this.calculateHashBytes();  // The stored hash always has to cover the merkel root.
+        }
 
         return true;
     }
+
+    @Override
+    public Map<ITransaction, Boolean> addTransactions(List<ITransaction> transactions) {
+        return this.addTransactions(transactions, SignatureVerifier.getDefault());
+    }
+
+    /**
+     * Adds all transactions like {@link #addTransactions(List)}, but first verifies the signatures of all of them in
+     * parallel. The transactions with a valid signature are then processed one after another in the order of the
+     * list, which is the only part that changes the UTXOs. The others are not processed at all.
+     * @param transactions List of new transactions.
+     * @param verifier Verifier to check the signatures with.
+     * @return A map who maps the transaction to a boolean if the transaction got successfully added to this block.
+     */
+    public Map<ITransaction, Boolean> addTransactions(List<ITransaction> transactions, SignatureVerifier verifier) {
+        final boolean genesis = prevHash.equals("0");
+        final boolean[] verified = genesis ? null : verifier.verifyAll(transactions);
+
+        final Map<ITransaction, Boolean> results = new LinkedHashMap<>();
+        for (int i = 0; i < transactions.size(); i++) {
+            final ITransaction transaction = transactions.get(i);
+            if (!genesis && !verified[i]) {
+                Metrics.Counter.TRANSACTIONS_INVALID_SIGNATURE.increment();
+                results.put(transaction, false);    // Never processed, so the UTXOs stay untouched.
+            } else {
+                results.put(transaction, this.addTransaction(transaction));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the merkel root over all transactions of this block or null if the block has no transactions.
+     */
+    public byte[] getMerkelRoot() {
+        return this.merkelTree.getRoot();
+    }
+
+    /**
+     * Returns the proof that the transaction is part of this block.
+     * Check it with {@link MerkelTree#verifyProof(byte[], int, List, byte[])} and the leaf of
+     * {@link Util#toMerkelLeaf(ITransaction)}.
+     * @param transactionIndex Index of the transaction in the order it got added.
+     * @return Sibling hashes from the transaction up to the merkel root.
+     */
+    public List<byte[]> getMerkelProof(int transactionIndex) {
+        return this.merkelTree.getProof(transactionIndex);
+    }
+
+    /**
+     * Hash bytes together with their hex form, so both always get read as a matching pair.
+     */
+    private static final class HexHash {
+
+        private final byte[] bytes;
+        private final String hex;
+
+        private HexHash(byte[] bytes, String hex) {
+            this.bytes = bytes;
+            this.hex = hex;
+        }
+    }
 }
@@ -18,18 +18,67 @@ package io.korti.chainresources.api.impl;
 
 import io.korti.chainresources.api.blockchain.IBlock;
 import io.korti.chainresources.api.blockchain.IBlockchain;
+import io.korti.chainresources.api.blockchain.IChainStore;
+import io.korti.chainresources.api.blockchain.IChainTip;
+import io.korti.chainresources.api.blockchain.ITransaction;
+import io.korti.chainresources.api.blockchain.ITransactionInput;
 import io.korti.chainresources.api.blockchain.ITransactionOutput;
 
+import java.math.BigInteger;
+import java.security.PublicKey;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
+/**
+ * The chain can be used from many threads at once.
+ * The UTXOs are kept in an immutable {@link UTXOState} that gets replaced as a whole with compare and set. Readers
+ * never block and always see the state before or after a change, never a part of it. The maps of the state are
+ * {@link PersistentMap}s, so a change only copies the paths to the changed entries and every state is a snapshot that
+ * can be handed out as it is. Adding blocks and validating are synchronized on the chain.
+ * <p>
+ * The UTXOs of the main chain only change when a block gets connected. A transaction already changes the UTXOs when it
+ * gets processed while its block gets built, that change stays pending on top of the UTXOs of the main chain until a
+ * block with the transaction gets connected. {@link #getUTXOs()} and the balances include the pending changes, so an
+ * output can't be spent twice. After every change of the main chain the pending changes get put on top of it again,
+ * without the ones of the connected transactions and the ones that don't fit anymore.
+ * <p>
+ * A block that builds on an older block than the last one starts or extends a side branch. Side branch blocks only
+ * change the UTXOs of the main chain when the branch gets more work than the main chain and replaces the blocks behind
+ * the fork. For every block of the main chain an {@link UndoRecord} of the UTXOs it
+ * created and spent is kept, so a reorganization only touches the blocks behind the fork. Reorganizations are limited
+ * to the heights the undo records are kept for.
+ */
 public class MineCoinBlockchain implements IBlockchain {
 
-    private final List<IBlock> blocks = new LinkedList<>();
-    private final Map<String, ITransactionOutput> UTXOs = new HashMap<>();
+    private static final int SNAPSHOT_HEIGHTS = 256;   // Number of heights the UTXO snapshots are kept for.
+    private static final int MAX_RETARGET_STEP = 2;     // Max bits the difficulty changes at once.
+    private static final int MAX_DIFFICULTY_BITS = 128; // Length of the block hash.
+    private static final int MAX_REORG_DEPTH = SNAPSHOT_HEIGHTS;    // Number of heights the undo records are kept for.
+
+    private final IChainStore blocks;
+    private final AtomicReference<UTXOState> utxoState = new AtomicReference<>(UTXOState.EMPTY);  // With pending.
+    private volatile UTXOState confirmed = UTXOState.EMPTY;     // UTXOs of the main chain, changed under the lock.
+    private final Map<Integer, UTXOState> snapshots = new ConcurrentHashMap<>();   // UTXOs of the recent heights.
+    private final Map<Integer, UndoRecord> undoRecords = new ConcurrentHashMap<>(); // Of the recent heights.
+    private final Map<String, BranchBlock> branchBlocks = new HashMap<>();  // Side branch blocks by hash.
+    private final OrphanPool orphanPool = new OrphanPool();
+    private final List<ITransaction> disconnected = new ArrayList<>();  // Left by a reorganization.
 
     private final float minTransactionValue;
-    private int difficulty;     // The difficulty should only be changed after a block got successfully added.
-    private boolean needsValidation = true;
+    private volatile int difficultyBits;    // The difficulty should only be changed after a block got successfully added.
+    private volatile boolean needsValidation = true;
+    private int validatedHeight = 0;    // Number of blocks from the start of the chain that got validated.
+    private int[] targets = new int[64];    // Difficulty every block got checked against on adding, 0 if unknown.
+    private int[] nextTargets = new int[64];    // Difficulty a block on top of the height needs, 0 if unknown.
+
+    private long targetBlockMillis = 0;     // Retargeting is off while this is 0.
+    private int retargetWindow;
+    private LongSupplier clock;
+    private long windowStartMillis;
+    private int windowBlocks;
 
     public MineCoinBlockchain() {
         this(0.01f, 2);
@@ -44,33 +93,546 @@ public class MineCoinBlockchain implements IBlockchain {
     }
 
     public MineCoinBlockchain(float minTransactionValue, int startDifficulty) {
+        this(minTransactionValue, startDifficulty, blockchain -> new MemoryChainStore());
+    }
+
+    /**
+     * @param storeFactory Creates the store for the blocks, it gets the chain the decoded blocks should belong to.
+     */
+    protected MineCoinBlockchain(float minTransactionValue, int startDifficulty,
+                                 Function<IBlockchain, IChainStore> storeFactory) {
         this.minTransactionValue = minTransactionValue;
-        this.difficulty = startDifficulty;
+        this.difficultyBits = startDifficulty * 4;
+        this.blocks = storeFactory.apply(this);
+
+        final IBlock lastBlock = this.blocks.last();
+        if (lastBlock != null && lastBlock.getDifficultyBits() > 0) {
+            this.difficultyBits = lastBlock.getDifficultyBits();    // Go on with the difficulty of a restored chain.
+        }
+    }
+
+    /**
+     * Turns on retargeting. After every window of blocks the difficulty gets changed so the blocks of the next window
+     * should take the target time. The difficulty changes by at most two bits at once, every bit doubles or halves
+     * the expected mining time.
+     * @param targetBlockMillis Time a block should take, 0 turns retargeting off.
+     * @param window Number of blocks the time gets measured over.
+     */
+    public void setRetargeting(long targetBlockMillis, int window) {
+        this.setRetargeting(targetBlockMillis, window, System::currentTimeMillis);
+    }
+
+    /**
+     * Turns on retargeting like {@link #setRetargeting(long, int)} with a clock to measure the block times.
+     * @param clock Returns the current time in milliseconds.
+     */
+    public synchronized void setRetargeting(long targetBlockMillis, int window, LongSupplier clock) {
+        if (window < 1) {
+            throw new IllegalArgumentException("The retarget window needs at least one block.");
+        }
+        this.targetBlockMillis = targetBlockMillis;
+        this.retargetWindow = window;
+        this.clock = clock;
+        this.windowStartMillis = clock.getAsLong();
+        this.windowBlocks = 0;
     }
 
+    /**
+     * Adds the block if its previous block is known. A block whose previous block isn't known yet is kept in the
+     * orphan pool and isn't added, it gets added together with its children as soon as its previous block is added.
+     * A block without a previous hash is only added as the first block of the chain. A rejected block doesn't change
+     * the UTXOs, the one who built it can take its pending changes back with {@link #discardTransactions(List)}.
+     */
     @Override
-    public boolean addBlock(IBlock block) {
-        if(!block.isMined(difficulty)) {
+    public synchronized boolean addBlock(IBlock block) {
+        final long start = System.nanoTime();
+        final int target = this.targetFor(block);
+        if (target < 0) {
+            Metrics.Counter.BLOCKS_REJECTED.increment();
+            return false;
+        }
+        if (block.getPreviousHash() == null && !this.blocks.isEmpty()) {
+            Metrics.Counter.BLOCKS_REJECTED.increment();
+            return false;   // Only the genesis block has no previous block.
+        }
+        if (!this.isLinked(block)) {
+            if (this.orphanPool.add(block)) {
+                Metrics.Counter.ORPHANS_ADDED.increment();
+            }
+            return false;   // Waits for its previous block.
+        }
+        if (!this.connectBlock(block, target, start)) {
             return false;
         }
-        this.blocks.add(block);
+        if (block.getHash() != null) {
+            this.connectOrphans(block.getHash());
+        }
+        return true;
+    }
+
+    /**
+     * Returns the difficulty the block has to be mined for or -1 if it isn't mined for it. That is the difficulty
+     * that was in effect after its previous block, so a block that got built before a retarget still fits.
+     */
+    private int targetFor(IBlock block) {
+        final int required = this.requiredTarget(block);
+        if (block.getDifficultyBits() > 0 && block.getDifficultyBits() < required) {
+            return -1;  // Block got mined for an easier difficulty than its previous block asks for.
+        }
+        final int target = Math.max(block.getDifficultyBits(), required);
+        return isMined(block, target) ? target : -1;
+    }
+
+    /**
+     * Returns the difficulty a block on top of the previous block of the block needs. Side branches don't retarget,
+     * so their blocks need the difficulty of their previous block. A block whose previous block isn't known yet only
+     * needs the difficulty it records, it gets checked again when it gets connected.
+     */
+    private int requiredTarget(IBlock block) {
+        final String prevHash = block.getPreviousHash();
+        if (prevHash == null || this.blocks.isEmpty()) {
+            return this.difficultyBits;
+        }
+        final BranchBlock parent = this.branchBlocks.get(prevHash);
+        if (parent != null) {
+            return parent.target;
+        }
+        final int height = this.blocks.getHeight(prevHash);
+        if (height < 0) {
+            return (block.getDifficultyBits() > 0) ? block.getDifficultyBits() : this.difficultyBits;
+        }
+        final int recorded = (height < this.nextTargets.length) ? this.nextTargets[height] : 0;
+        return (recorded > 0) ? recorded : this.difficultyBits;
+    }
+
+    /**
+     * Checks if the previous block of the block is part of the main chain or a side branch.
+     */
+    private boolean isLinked(IBlock block) {
+        final String prevHash = block.getPreviousHash();
+        if (this.blocks.isEmpty()) {
+            return true;    // Genesis block.
+        }
+        return prevHash.equals(this.blocks.last().getHash()) || this.branchBlocks.containsKey(prevHash)
+                || this.blocks.getHeight(prevHash) >= 0;
+    }
+
+    private boolean connectBlock(IBlock block, int target, long start) {
+        if (this.isSideBlock(block)) {
+            if (!this.addSideBlock(block, target)) {
+                Metrics.Counter.BLOCKS_REJECTED.increment();
+                return false;
+            }
+            Metrics.Counter.BLOCKS_ADDED.increment();
+            Metrics.Latency.BLOCK_ADD.recordSince(start);
+            return true;
+        }
+
+        final UTXOChange change = new UTXOChange(this.confirmed);
+        if (!change.connect(block)) {
+            Metrics.Counter.BLOCKS_REJECTED.increment();
+            return false;   // The transactions don't fit the UTXOs of the main chain.
+        }
+
+        this.logConfirmed(change.added.values(), change.removed);
+        final int height = this.blocks.append(block);
+        this.recordTarget(height, target);
+        this.retarget();
+        this.nextTargets = record(this.nextTargets, height, this.difficultyBits);
+        this.recordUndo(height, change.undoRecords.get(0));
+        this.confirm(change.state, outputIdsOf(block.getTransactions()));
+        this.snapshots.put(height, change.state);
+        this.snapshots.remove(height - SNAPSHOT_HEIGHTS);
         this.needsValidation = true;
+        Metrics.Counter.BLOCKS_ADDED.increment();
+        Metrics.Latency.BLOCK_ADD.recordSince(start);
         return true;
     }
 
+    /**
+     * Adds the orphans that build on the block, then the ones that build on those and so on. Every orphan is only
+     * looked at once.
+     */
+    private void connectOrphans(String hash) {
+        final Deque<String> parents = new ArrayDeque<>();
+        parents.add(hash);
+        while (!parents.isEmpty()) {
+            for (IBlock orphan : this.orphanPool.removeChildren(parents.poll())) {
+                final int target = this.targetFor(orphan);
+                if (target >= 0 && this.connectBlock(orphan, target, System.nanoTime())) {
+                    Metrics.Counter.ORPHANS_CONNECTED.increment();
+                    parents.add(orphan.getHash());
+                } else if (target < 0) {
+                    Metrics.Counter.BLOCKS_REJECTED.increment();
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized List<ITransaction> takeDisconnectedTransactions() {
+        if (this.disconnected.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<ITransaction> transactions = new ArrayList<>(this.disconnected);
+        this.disconnected.clear();
+        return transactions;
+    }
+
+    public OrphanPool getOrphanPool() {
+        return this.orphanPool;
+    }
+
+    private void recordUndo(int height, UndoRecord undo) {
+        if (undo == null) {
+            this.undoRecords.remove(height);    // The chain can't be reorganized behind this block.
+        } else {
+            this.undoRecords.put(height, undo);
+        }
+        this.undoRecords.remove(height - MAX_REORG_DEPTH);
+    }
+
+    /**
+     * Checks if the block builds on a block that is known, but not the last block of the main chain.
+     */
+    private boolean isSideBlock(IBlock block) {
+        final String prevHash = block.getPreviousHash();
+        final IBlock lastBlock = this.blocks.last();
+        if (prevHash == null || lastBlock == null || prevHash.equals(lastBlock.getHash())) {
+            return false;
+        }
+        return this.branchBlocks.containsKey(prevHash) || this.blocks.getHeight(prevHash) >= 0;
+    }
+
+    private boolean addSideBlock(IBlock block, int target) {
+        final String hash = block.getHash();
+        if (this.branchBlocks.containsKey(hash) || this.blocks.getHeight(hash) >= 0) {
+            return false;   // Already known.
+        }
+        final BranchBlock parent = this.branchBlocks.get(block.getPreviousHash());
+        final int height = (parent == null) ? this.blocks.getHeight(block.getPreviousHash()) + 1 : parent.height + 1;
+        if (this.height() - height >= MAX_REORG_DEPTH) {
+            return false;   // Too deep to ever become part of the main chain.
+        }
+
+        final BranchBlock branchBlock = new BranchBlock(block, height, target);
+        this.branchBlocks.put(hash, branchBlock);
+        final List<BranchBlock> branch = this.branchOf(branchBlock);
+        if (branch != null && this.workOf(branch).compareTo(this.mainWorkAfter(branch.get(0).height - 1)) > 0) {
+            this.reorganize(branch);
+        }
+        this.pruneBranches();
+        return true;
+    }
+
+    /**
+     * Returns the blocks of the side branch from the fork up to the block or null if the branch isn't connected to
+     * the main chain anymore.
+     */
+    private List<BranchBlock> branchOf(BranchBlock tip) {
+        final LinkedList<BranchBlock> branch = new LinkedList<>();
+        BranchBlock current = tip;
+        while (current != null) {
+            branch.addFirst(current);
+            final String prevHash = current.block.getPreviousHash();
+            if (this.blocks.getHeight(prevHash) == current.height - 1) {
+                return branch;
+            }
+            current = this.branchBlocks.get(prevHash);
+        }
+        return null;
+    }
+
+    private BigInteger workOf(List<BranchBlock> branch) {
+        BigInteger work = BigInteger.ZERO;
+        for (BranchBlock branchBlock : branch) {
+            work = work.add(workOf(branchBlock.target));
+        }
+        return work;
+    }
+
+    /**
+     * Returns the work of the main chain behind the height.
+     */
+    private BigInteger mainWorkAfter(int height) {
+        BigInteger work = BigInteger.ZERO;
+        for (int i = height + 1; i < this.blocks.size(); i++) {
+            final int recorded = (i < this.targets.length) ? this.targets[i] : 0;
+            work = work.add(workOf((recorded > 0) ? recorded : this.targetOf(this.blocks.get(i), i)));
+        }
+        return work;
+    }
+
+    /**
+     * Every difficulty bit doubles the expected hash attempts.
+     */
+    private static BigInteger workOf(int target) {
+        return BigInteger.ONE.shiftLeft(target);
+    }
+
+    /**
+     * Replaces the main chain behind the fork with the side branch. First the undo records of the main blocks get
+     * applied, then the transactions of the branch. The UTXOs change in one step, if a block of the branch spends a
+     * UTXO that doesn't exist, nothing changes.
+     * @param branch Blocks of the side branch from the fork on.
+     * @return True if the branch is the main chain now.
+     */
+    private boolean reorganize(List<BranchBlock> branch) {
+        final int forkHeight = branch.get(0).height - 1;
+        final int oldHeight = this.height();
+        for (int height = forkHeight + 1; height <= oldHeight; height++) {
+            if (!this.undoRecords.containsKey(height)) {
+                return false;   // The block can't be undone.
+            }
+        }
+
+        final UTXOChange change = new UTXOChange(this.confirmed);
+        for (int height = oldHeight; height > forkHeight; height--) {
+            final UndoRecord undo = this.undoRecords.get(height);
+            if (!change.apply(undo.spent, undo.created)) {
+                return false;   // The undo record doesn't fit the UTXOs of the main chain.
+            }
+        }
+        final List<ITransaction> transactions = new ArrayList<>();
+        for (BranchBlock branchBlock : branch) {
+            if (!change.connect(branchBlock.block)) {
+                return false;   // The branch isn't valid on top of the fork.
+            }
+            transactions.addAll(branchBlock.block.getTransactions());
+        }
+        this.logConfirmed(change.added.values(), change.removed);
+
+        final Set<String> connected = new HashSet<>();
+        branch.forEach(branchBlock -> branchBlock.block.getTransactions().forEach(t -> connected.add(t.getId())));
+        for (int height = forkHeight + 1; height <= oldHeight; height++) {
+            final IBlock block = this.blocks.get(height);
+            for (ITransaction transaction : block.getTransactions()) {
+                if (!connected.contains(transaction.getId())) {
+                    this.disconnected.add(transaction);
+                }
+            }
+            this.branchBlocks.put(block.getHash(), new BranchBlock(block, height, this.targetOf(block, height)));
+            this.undoRecords.remove(height);
+            this.snapshots.remove(height);
+        }
+        this.blocks.truncate(forkHeight + 1);
+
+        for (int i = 0; i < branch.size(); i++) {
+            final BranchBlock branchBlock = branch.get(i);
+            this.branchBlocks.remove(branchBlock.block.getHash());
+            final int height = this.blocks.append(branchBlock.block);
+            this.recordTarget(height, branchBlock.target);
+            this.nextTargets = record(this.nextTargets, height, this.difficultyBits);
+            this.recordUndo(height, change.undoRecords.get(i));
+            this.snapshots.put(height, change.states.get(i));
+        }
+        this.confirm(change.state, outputIdsOf(transactions));
+
+        this.validatedHeight = Math.min(this.validatedHeight, forkHeight + 1);
+        this.needsValidation = true;
+        Metrics.Counter.CHAIN_REORGANIZATIONS.increment();
+        Metrics.Counter.BLOCKS_DISCONNECTED.add(oldHeight - forkHeight);
+        return true;
+    }
+
+    /**
+     * Drops the side branch blocks that are too deep to become part of the main chain and the ones that lost the
+     * connection to it.
+     */
+    private void pruneBranches() {
+        final int minHeight = this.height() - MAX_REORG_DEPTH;
+        boolean removed;
+        do {
+            removed = this.branchBlocks.values().removeIf(branchBlock -> branchBlock.height <= minHeight ||
+                    (!this.branchBlocks.containsKey(branchBlock.block.getPreviousHash()) &&
+                            this.blocks.getHeight(branchBlock.block.getPreviousHash()) != branchBlock.height - 1));
+        } while (removed);
+    }
+
+    @Override
+    public synchronized List<ChainTip> getTips() {
+        final List<ChainTip> tips = new ArrayList<>();
+        final IBlock lastBlock = this.blocks.last();
+        if (lastBlock != null) {
+            tips.add(new ChainTip(lastBlock.getHash(), this.height(), this.height(), true));
+        }
+
+        final Set<String> parents = new HashSet<>();
+        this.branchBlocks.values().forEach(branchBlock -> parents.add(branchBlock.block.getPreviousHash()));
+        for (BranchBlock branchBlock : this.branchBlocks.values()) {
+            final List<BranchBlock> branch = this.branchOf(branchBlock);
+            if (!parents.contains(branchBlock.block.getHash()) && branch != null) {
+                tips.add(new ChainTip(branchBlock.block.getHash(), branchBlock.height, branch.get(0).height - 1,
+                        false));
+            }
+        }
+        return tips;
+    }
+
+    private void recordTarget(int height, int target) {
+        this.targets = record(this.targets, height, target);
+    }
+
+    private static int[] record(int[] targets, int height, int target) {
+        if (height >= targets.length) {
+            targets = Arrays.copyOf(targets, Math.max(targets.length * 2, height + 1));
+        }
+        targets[height] = target;
+        return targets;
+    }
+
+    /**
+     * Returns the difficulty a block has to be checked against. That is the difficulty the block records or the one
+     * it got checked against on adding, the current difficulty is only used if both are unknown.
+     */
+    private int targetOf(IBlock block, int height) {
+        final int recorded = (height < this.targets.length) ? this.targets[height] : 0;
+        final int target = Math.max(block.getDifficultyBits(), recorded);
+        return (target > 0) ? target : this.difficultyBits;
+    }
+
+    private void retarget() {
+        if (this.targetBlockMillis <= 0 || ++this.windowBlocks < this.retargetWindow) {
+            return;
+        }
+        final long now = this.clock.getAsLong();
+        final double averageMillis = (double) (now - this.windowStartMillis) / this.windowBlocks;
+        this.windowStartMillis = now;
+        this.windowBlocks = 0;
+
+        // Every bit doubles the expected attempts, so the change in bits is log2 of the time ratio.
+        final int step = (averageMillis <= 0) ? MAX_RETARGET_STEP
+                : (int) Math.round(Math.log(this.targetBlockMillis / averageMillis) / Math.log(2));
+        final int clampedStep = Math.max(-MAX_RETARGET_STEP, Math.min(MAX_RETARGET_STEP, step));
+        this.difficultyBits = Math.max(1, Math.min(MAX_DIFFICULTY_BITS, this.difficultyBits + clampedStep));
+    }
+
+    /**
+     * Adds the UTXO to the main chain, for example to give a wallet its first coins.
+     */
     @Override
     public void addUTXO(ITransactionOutput utxo) {
-        this.UTXOs.put(utxo.getID(), utxo);
+        this.updateConfirmedUTXOs(Collections.singletonList(utxo), Collections.emptyList());
     }
 
+    /**
+     * Removes the UTXO from the main chain.
+     */
     @Override
     public void removeUTXO(String id) {
-        this.UTXOs.remove(id);
+        this.updateConfirmedUTXOs(Collections.emptyList(), Collections.singletonList(id));
+    }
+
+    /**
+     * Changes the UTXOs of the main chain outside of a block. The pending changes are put on top of it again.
+     * @return True if the change got applied, false if one of the UTXOs to remove isn't part of the main chain.
+     */
+    protected synchronized boolean updateConfirmedUTXOs(Collection<ITransactionOutput> added,
+                                                        Collection<String> removedIds) {
+        final UTXOState next = this.confirmed.update(added, removedIds);
+        if (next == null) {
+            return false;
+        }
+        this.logConfirmed(added, removedIds);
+        this.confirm(next, Collections.emptySet());
+        return true;
+    }
+
+    /**
+     * Gets every change of the UTXOs of the main chain while holding the lock of the chain, before the change gets
+     * applied. That is one change per connected block, per reorganization and per change outside of a block. Pending
+     * changes never get here. Does nothing here, a chain that keeps its UTXOs on disk records the changes.
+     * @param added UTXOs the change adds.
+     * @param removedIds IDs of the UTXOs the change removes, none of them is part of the added UTXOs.
+     */
+    protected void logConfirmed(Collection<ITransactionOutput> added, Collection<String> removedIds) {
+    }
+
+    /**
+     * Applies the change of a processed transaction. It stays pending until a block with the transaction gets
+     * connected.
+     */
+    @Override
+    public boolean updateUTXOs(Collection<ITransactionOutput> added, Collection<String> removedIds) {
+        final List<ITransactionOutput> addedCopy = new ArrayList<>(added);
+        final List<String> removedCopy = new ArrayList<>(removedIds);
+        while (true) {
+            final UTXOState current = this.utxoState.get();
+            final UTXOState next = current.update(addedCopy, removedCopy,
+                    new PendingChange(addedCopy, removedCopy, current.pending));
+            if (next == null) {
+                return false;   // A UTXO to remove is already gone, probably spent by another thread.
+            }
+            if (this.utxoState.compareAndSet(current, next)) {
+                return true;
+            }
+            Metrics.Counter.UTXO_COMMIT_RETRIES.increment();
+        }
+    }
+
+    /**
+     * Takes the pending changes of the transactions back, they don't fit on top of the main chain anymore.
+     */
+    @Override
+    public synchronized void discardTransactions(List<? extends ITransaction> transactions) {
+        this.rebase(outputIdsOf(transactions));
+    }
+
+    /**
+     * Replaces the UTXOs of the main chain and puts the pending changes on top of them again.
+     * @param outputIds Outputs of the transactions that are part of the main chain now, their changes are dropped.
+     */
+    private void confirm(UTXOState state, Set<String> outputIds) {
+        this.confirmed = state;
+        this.rebase(outputIds);
+    }
+
+    /**
+     * Puts the pending changes on top of the UTXOs of the main chain, in the order they got applied. A change that
+     * doesn't fit anymore, because a block spent one of its UTXOs, gets dropped.
+     * @param outputIds Outputs of the transactions whose changes are dropped.
+     */
+    private void rebase(Set<String> outputIds) {
+        final Deque<PendingChange> changes = new ArrayDeque<>();
+        while (true) {
+            final UTXOState current = this.utxoState.get();
+            changes.clear();
+            for (PendingChange change = current.pending; change != null; change = change.previous) {
+                changes.push(change);   // Oldest first.
+            }
+
+            UTXOState next = this.confirmed;
+            for (PendingChange change : changes) {
+                if (change.isPartOf(outputIds)) {
+                    continue;
+                }
+                final UTXOState rebased = next.update(change.added, change.removedIds,
+                        new PendingChange(change.added, change.removedIds, next.pending));
+                if (rebased != null) {
+                    next = rebased;
+                }
+            }
+            if (this.utxoState.compareAndSet(current, next)) {
+                return;
+            }
+            Metrics.Counter.UTXO_COMMIT_RETRIES.increment();
+        }
+    }
+
+    private static Set<String> outputIdsOf(Collection<? extends ITransaction> transactions) {
+        final Set<String> ids = new HashSet<>();
+        transactions.forEach(transaction -> transaction.getOutputs().forEach(output -> ids.add(output.getID())));
+        return ids;
     }
 
     @Override
     public int getDifficulty() {
-        return this.difficulty;
+        return this.difficultyBits / 4;
+    }
+
+    @Override
+    public int getDifficultyBits() {
+        return this.difficultyBits;
     }
 
     @Override
@@ -80,20 +642,81 @@ public class MineCoinBlockchain implements IBlockchain {
 
     @Override
     public Map<String, ITransactionOutput> getUTXOs() {
-        return Collections.unmodifiableMap(this.UTXOs);
+        return this.utxoState.get().utxos;
+    }
+
+    @Override
+    public Map<String, ITransactionOutput> getUTXOs(PublicKey owner) {
+        final OwnerUTXOs utxos = this.utxoState.get().owners.get(owner);
+        return (utxos == null) ? Collections.emptyMap() : utxos.outputs;
+    }
+
+    @Override
+    public Map<String, ITransactionOutput> getUTXOsAtHeight(int height) {
+        final UTXOState state = this.snapshots.get(height);
+        return (state == null) ? null : state.utxos;
+    }
+
+    @Override
+    public float getBalance(PublicKey owner) {
+        final OwnerUTXOs utxos = this.utxoState.get().owners.get(owner);
+        return (utxos == null) ? 0f : (float) utxos.balance;
+    }
+
+    protected IChainStore getChainStore() {
+        return this.blocks;
+    }
+
+    /**
+     * Returns the UTXOs of the main chain, without the pending changes.
+     */
+    protected Map<String, ITransactionOutput> getConfirmedUTXOs() {
+        return this.confirmed.utxos;
     }
 
     @Override
     public IBlock lastBlock() {
-        if(this.blocks.isEmpty()) {
-            return null;
-        }
-        return this.blocks.get(this.blocks.size() - 1);
+        return this.blocks.last();
+    }
+
+    @Override
+    public IBlock getBlock(int height) {
+        return this.blocks.get(height);
     }
 
     @Override
-    public boolean validate() {
-        if(this.blocks.size() == 1) { // Validate only genesis block.
+    public IBlock getBlock(String hash) {
+        return this.blocks.get(hash);
+    }
+
+    @Override
+    public int height() {
+        return this.blocks.size() - 1;
+    }
+
+    @Override
+    public synchronized boolean validate() {
+        return this.timedValidateFrom(this.validatedHeight);
+    }
+
+    @Override
+    public synchronized boolean revalidate() {
+        this.validatedHeight = 0;
+        this.needsValidation = true;
+        return this.timedValidateFrom(0);
+    }
+
+    private boolean timedValidateFrom(int startHeight) {
+        final long start = System.nanoTime();
+        try {
+            return this.validateFrom(startHeight);
+        } finally {
+            Metrics.Latency.VALIDATION.recordSince(start);
+        }
+    }
+
+    private boolean validateFrom(int startHeight) {
+        if(startHeight == 0 && this.blocks.size() == 1) { // Validate only genesis block.
             IBlock genesisBlock = this.blocks.get(0);
             if(!genesisBlock.getHash().equals(genesisBlock.calculateHash())) {
                 return false;   // Genesis block hash is not equal.
@@ -101,7 +724,7 @@ public class MineCoinBlockchain implements IBlockchain {
             if(!genesisBlock.getPreviousHash().equals("0")) {
                 return false;   // Previous has of genesis block should be "0".
             }
-            if(!genesisBlock.isMined(difficulty)) {
+            if(!isMined(genesisBlock, targetOf(genesisBlock, 0))) {
                 return false;   // Genesis block hasn't been mined.
             }
         }
@@ -109,7 +732,7 @@ public class MineCoinBlockchain implements IBlockchain {
         IBlock curBlock;
         IBlock prevBlock;
 
-        for(int i = 1; i < this.blocks.size(); i++) {
+        for(int i = Math.max(1, startHeight); i < this.blocks.size(); i++) {
             curBlock = this.blocks.get(i);
             prevBlock = this.blocks.get(i - 1);
 
@@ -119,11 +742,12 @@ public class MineCoinBlockchain implements IBlockchain {
             if(!prevBlock.getHash().equals(curBlock.getPreviousHash())) {
                 return false; // Previous block hash is not equal.
             }
-            if(!curBlock.isMined(difficulty)) {     // TODO: This will break if difficulty will be variable.
+            if(!isMined(curBlock, targetOf(curBlock, i))) {
                 return false; // Current block hasn't been mined. This should never happen as this validation is already done on adding a block.
             }
         }
 
+        this.validatedHeight = this.blocks.size();
         this.needsValidation = false;
         return true;
     }
@@ -133,4 +757,297 @@ public class MineCoinBlockchain implements IBlockchain {
         return !this.needsValidation;
     }
 
+    private static boolean isMined(IBlock block, int difficultyBits) {
+        if (difficultyBits % 4 == 0) {
+            return block.isMined(difficultyBits / 4);  // Whole hex characters, so blocks that only know this check work.
+        }
+        return block.isMinedBits(difficultyBits);
+    }
+
+    /**
+     * Tip of the main chain or of a side branch.
+     */
+    public static final class ChainTip implements IChainTip {
+
+        private final String hash;
+        private final int height;
+        private final int forkHeight;
+        private final boolean main;
+
+        private ChainTip(String hash, int height, int forkHeight, boolean main) {
+            this.hash = hash;
+            this.height = height;
+            this.forkHeight = forkHeight;
+            this.main = main;
+        }
+
+        @Override
+        public String getHash() {
+            return this.hash;
+        }
+
+        @Override
+        public int getHeight() {
+            return this.height;
+        }
+
+        @Override
+        public int getForkHeight() {
+            return this.forkHeight;
+        }
+
+        @Override
+        public int getBranchLength() {
+            return this.height - this.forkHeight;
+        }
+
+        @Override
+        public boolean isMain() {
+            return this.main;
+        }
+    }
+
+    /**
+     * Block of a side branch with the height it would have in the main chain.
+     */
+    private static final class BranchBlock {
+
+        private final IBlock block;
+        private final int height;
+        private final int target;   // Difficulty the block got checked against.
+
+        private BranchBlock(IBlock block, int height, int target) {
+            this.block = block;
+            this.height = height;
+            this.target = target;
+        }
+    }
+
+    /**
+     * The UTXOs a block of the main chain created and spent. Outputs that got created and spent in the same block
+     * aren't part of it.
+     */
+    private static final class UndoRecord {
+
+        private final List<String> created;
+        private final List<ITransactionOutput> spent;
+
+        private UndoRecord(List<String> created, List<ITransactionOutput> spent) {
+            this.created = created;
+            this.spent = spent;
+        }
+
+        /**
+         * Creates the record of a block whose transactions got processed already.
+         * @param before UTXOs before the block, to look up spent outputs the inputs don't know anymore.
+         * @return The record or null if a spent output is unknown.
+         */
+        private static UndoRecord of(IBlock block, Map<String, ITransactionOutput> before) {
+            if ("0".equals(block.getPreviousHash())) {
+                return new UndoRecord(Collections.emptyList(), Collections.emptyList());  // Not processed.
+            }
+            final Map<String, ITransactionOutput> created = new LinkedHashMap<>();
+            final Map<String, ITransactionOutput> spent = new LinkedHashMap<>();
+            for (ITransaction transaction : block.getTransactions()) {
+                for (ITransactionOutput output : transaction.getOutputs()) {
+                    created.put(output.getID(), output);
+                }
+                for (ITransactionInput input : transaction.getInputs()) {
+                    final String id = input.getTransactionOutputID();
+                    if (created.remove(id) != null) {
+                        continue;   // Created and spent in this block.
+                    }
+                    ITransactionOutput output = input.getUTXO();
+                    if (output == null && before != null) {
+                        output = before.get(id);
+                    }
+                    if (output == null) {
+                        return null;
+                    }
+                    spent.put(id, output);
+                }
+            }
+            return new UndoRecord(new ArrayList<>(created.keySet()), new ArrayList<>(spent.values()));
+        }
+    }
+
+    /**
+     * Collects the changes of a reorganization on top of a state, so they can be applied as one change.
+     */
+    private static final class UTXOChange {
+
+        private UTXOState state;
+        private final Map<String, ITransactionOutput> added = new LinkedHashMap<>();
+        private final Set<String> removed = new LinkedHashSet<>();
+        private final List<UndoRecord> undoRecords = new ArrayList<>();    // Of the connected blocks.
+        private final List<UTXOState> states = new ArrayList<>();  // After every connected block.
+
+        private UTXOChange(UTXOState state) {
+            this.state = state;
+        }
+
+        private boolean apply(Collection<ITransactionOutput> added, Collection<String> removedIds) {
+            final UTXOState next = this.state.update(added, removedIds);
+            if (next == null) {
+                return false;
+            }
+            this.state = next;
+            for (ITransactionOutput output : added) {
+                if (!this.removed.remove(output.getID())) {
+                    this.added.put(output.getID(), output);
+                }
+            }
+            for (String id : removedIds) {
+                if (this.added.remove(id) == null) {
+                    this.removed.add(id);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Applies the transactions of the block and records its undo record.
+         */
+        private boolean connect(IBlock block) {
+            final Map<String, ITransactionOutput> before = this.state.utxos;
+            if (!"0".equals(block.getPreviousHash())) {
+                for (ITransaction transaction : block.getTransactions()) {
+                    if (!transaction.verifySignature()) {
+                        return false;
+                    }
+                    final List<String> inputIds = new ArrayList<>(transaction.getInputs().size());
+                    transaction.getInputs().forEach(input -> inputIds.add(input.getTransactionOutputID()));
+                    if (!this.apply(transaction.getOutputs(), inputIds)) {
+                        return false;
+                    }
+                }
+            }
+            this.undoRecords.add(UndoRecord.of(block, before));
+            this.states.add(this.state);
+            return true;
+        }
+    }
+
+    /**
+     * Immutable UTXOs of the chain together with the owner index, so both always belong to the same changes.
+     */
+    private static final class UTXOState {
+
+        private static final UTXOState EMPTY = new UTXOState(PersistentMap.empty(), PersistentMap.empty(), null);
+
+        private final PersistentMap<String, ITransactionOutput> utxos;
+        private final PersistentMap<PublicKey, OwnerUTXOs> owners;     // UTXOs indexed by their receiver.
+        private final PendingChange pending;    // Newest change on top of the main chain, null if there is none.
+
+        private UTXOState(PersistentMap<String, ITransactionOutput> utxos, PersistentMap<PublicKey, OwnerUTXOs> owners,
+                          PendingChange pending) {
+            this.utxos = utxos;
+            this.owners = owners;
+            this.pending = pending;
+        }
+
+        /**
+         * Returns the state with the change applied or null if one of the UTXOs to remove doesn't exist.
+         */
+        private UTXOState update(Collection<ITransactionOutput> added, Collection<String> removedIds) {
+            return this.update(added, removedIds, this.pending);
+        }
+
+        /**
+         * Applies the change like {@link #update(Collection, Collection)} and replaces the pending changes.
+         */
+        private UTXOState update(Collection<ITransactionOutput> added, Collection<String> removedIds,
+                                 PendingChange pending) {
+            PersistentMap<String, ITransactionOutput> utxos = this.utxos;
+            PersistentMap<PublicKey, OwnerUTXOs> owners = this.owners;
+
+            for (ITransactionOutput utxo : added) {
+                final ITransactionOutput replaced = utxos.get(utxo.getID());
+                utxos = utxos.plus(utxo.getID(), utxo);
+                if (replaced != null) {
+                    owners = removeFromOwner(owners, replaced);
+                }
+                if (utxo.getReceiver() != null) {
+                    final OwnerUTXOs owner = owners.get(utxo.getReceiver());
+                    owners = owners.plus(utxo.getReceiver(), ((owner == null) ? OwnerUTXOs.EMPTY : owner).plus(utxo));
+                }
+            }
+            for (String id : removedIds) {
+                final ITransactionOutput removed = utxos.get(id);
+                if (removed == null) {
+                    return null;
+                }
+                utxos = utxos.minus(id);
+                owners = removeFromOwner(owners, removed);
+            }
+            return new UTXOState(utxos, owners, pending);
+        }
+
+        private static PersistentMap<PublicKey, OwnerUTXOs> removeFromOwner(PersistentMap<PublicKey, OwnerUTXOs> owners,
+                                                                           ITransactionOutput utxo) {
+            final OwnerUTXOs owner = (utxo.getReceiver() == null) ? null : owners.get(utxo.getReceiver());
+            if (owner == null) {
+                return owners;
+            }
+            final OwnerUTXOs changed = owner.minus(utxo);
+            // Drop empty owners, so the index only grows with UTXOs.
+            return changed.outputs.isEmpty() ? owners.minus(utxo.getReceiver()) : owners.plus(utxo.getReceiver(), changed);
+        }
+    }
+
+    /**
+     * Change of a processed transaction that isn't part of the main chain yet. The changes are linked from the newest
+     * to the oldest one.
+     */
+    private static final class PendingChange {
+
+        private final List<ITransactionOutput> added;
+        private final List<String> removedIds;
+        private final PendingChange previous;
+
+        private PendingChange(List<ITransactionOutput> added, List<String> removedIds, PendingChange previous) {
+            this.added = added;
+            this.removedIds = removedIds;
+            this.previous = previous;
+        }
+
+        /**
+         * Checks if the change belongs to one of the transactions that created the outputs.
+         */
+        private boolean isPartOf(Set<String> outputIds) {
+            for (ITransactionOutput output : this.added) {
+                if (outputIds.contains(output.getID())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class OwnerUTXOs {
+
+        private static final OwnerUTXOs EMPTY = new OwnerUTXOs(PersistentMap.empty(), 0);
+
+        private final PersistentMap<String, ITransactionOutput> outputs;
+        private final double balance;   // Running sum of the outputs, double so adding and removing doesn't drift.
+
+        private OwnerUTXOs(PersistentMap<String, ITransactionOutput> outputs, double balance) {
+            this.outputs = outputs;
+            this.balance = balance;
+        }
+
+        private OwnerUTXOs plus(ITransactionOutput utxo) {
+            final ITransactionOutput replaced = this.outputs.get(utxo.getID());
+            final double balance = this.balance + utxo.getValue() - ((replaced == null) ? 0 : replaced.getValue());
+            return new OwnerUTXOs(this.outputs.plus(utxo.getID(), utxo), balance);
+        }
+
+        private OwnerUTXOs minus(ITransactionOutput utxo) {
+            if (!this.outputs.containsKey(utxo.getID())) {
+                return this;
+            }
+            return new OwnerUTXOs(this.outputs.minus(utxo.getID()), this.balance - utxo.getValue());
+        }
+    }
+
 }
@@ -0,0 +1,189 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.korti.chainresources.api.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mines a {@link MineCoinBlock} on a pool of worker threads.
+ * Every worker gets its own slice of the nonce space (worker n tries start + n, start + n + workers, ...) and all of
+ * them stop as soon as one finds a valid hash. The single step {@link MineCoinBlock#mineBlock(int)} is not affected.
+ */
+public class MineCoinMiner {
+
+    private static final int REPORT_INTERVAL = 256;     // Attempts a worker does before it reports them.
+
+    private final int workers;
+    private final ExecutorService executor;
+
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder miningNanos = new LongAdder();
+
+    public MineCoinMiner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public MineCoinMiner(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("A miner needs at least one worker.");
+        }
+        this.workers = workers;
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "MineCoin Miner #" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Mines the block until one of the workers found a hash for the difficulty or the whole nonce space got searched.
+     * @param block Block to mine.
+     * @param difficulty The difficulty is used to determine with how many 0s the hash should start.
+     * @return True if the block got mined or is already mined otherwise false.
+     */
+    public boolean mine(MineCoinBlock block, int difficulty) {
+        return this.mineBits(block, difficulty * 4);
+    }
+
+    /**
+     * Mines the block until one of the workers found a hash that starts with the given number of 0 bits or the whole
+     * nonce space got searched.
+     * @param block Block to mine.
+     * @param zeroBits Number of 0 bits the hash should start with.
+     * @return True if the block got mined or is already mined otherwise false.
+     */
+    public boolean mineBits(MineCoinBlock block, int zeroBits) {
+        return this.mineBits(block, zeroBits, 0, false);
+    }
+
+    /**
+     * Mines the block like {@link #mineBits(MineCoinBlock, int)}, but stops at the deadline. The nonce of the block
+     * is moved behind the searched nonces, so the next call goes on where this one stopped.
+     * @param block Block to mine.
+     * @param zeroBits Number of 0 bits the hash should start with.
+     * @param deadline Value of {@link System#nanoTime()} at which the workers stop.
+     * @return True if the block got mined or is already mined otherwise false.
+     */
+    public boolean mineBits(MineCoinBlock block, int zeroBits, long deadline) {
+        return this.mineBits(block, zeroBits, deadline, true);
+    }
+
+    private boolean mineBits(MineCoinBlock block, int zeroBits, long deadline, boolean hasDeadline) {
+        if (block.isMinedBits(zeroBits)) {
+            return true;    // The block keeps its hash up to date with its transactions, so the shortcut is safe.
+        }
+
+        final int startNonce = block.getNonce() + 1;
+        final long attemptsPerWorker = (1L << 32) / workers;
+        final AtomicBoolean found = new AtomicBoolean(false);
+        final long[] done = new long[workers];  // Attempts every worker finished, to go on from there next time.
+
+        final long start = System.nanoTime();
+        final List<Future<?>> futures = new ArrayList<>(workers);
+        for (int worker = 0; worker < workers; worker++) {
+            final int offset = worker;
+            futures.add(executor.submit(() -> {
+                int nonce = startNonce + offset;
+                long unreported = 0;
+                long i = 0;
+                for (; i < attemptsPerWorker && !found.get(); i++, nonce += workers) {
+                    final byte[] hash = block.calculateHashBytes(nonce);
+                    if (++unreported == REPORT_INTERVAL) {
+                        attempts.add(unreported);
+                        Metrics.Counter.HASH_ATTEMPTS.add(unreported);
+                        unreported = 0;
+                        if (hasDeadline && System.nanoTime() - deadline >= 0) {
+                            i++;
+                            break;
+                        }
+                    }
+                    if (Util.hasLeadingZeroBits(hash, zeroBits) && found.compareAndSet(false, true)) {
+                        block.publishNonce(nonce, hash);
+                        Metrics.Counter.BLOCKS_MINED.increment();
+                    }
+                }
+                attempts.add(unreported);
+                Metrics.Counter.HASH_ATTEMPTS.add(unreported);
+                done[offset] = i;
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();   // Also makes the attempts in done visible.
+            }
+        } catch (InterruptedException e) {
+            found.set(true);    // Stops the workers that are still running.
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            found.set(true);
+            throw new RuntimeException(e.getCause());
+        } finally {
+            miningNanos.add(System.nanoTime() - start);
+        }
+
+        if (hasDeadline && !block.isMinedBits(zeroBits) && !Thread.currentThread().isInterrupted()) {
+            long searched = Long.MAX_VALUE;
+            for (long attempts : done) {
+                searched = Math.min(searched, attempts);
+            }
+            final int lastNonce = (int) (startNonce + searched * workers - 1);
+            block.publishNonce(lastNonce, block.calculateHashBytes(lastNonce));
+        }
+        return block.isMinedBits(zeroBits);
+    }
+
+    /**
+     * Returns the number of hashes all workers together tried so far.
+     */
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    /**
+     * Returns the average number of hashes per second over all mining runs, which can be used to size the pool.
+     */
+    public double getAttemptsPerSecond() {
+        final long nanos = miningNanos.sum();
+        if (nanos == 0) {
+            return 0;
+        }
+        return attempts.sum() * 1_000_000_000d / nanos;
+    }
+
+    public int getWorkers() {
+        return this.workers;
+    }
+
+    /**
+     * Stops the worker threads. The miner can't be used afterwards.
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+}
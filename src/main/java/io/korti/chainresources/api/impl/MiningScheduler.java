@@ -0,0 +1,187 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.korti.chainresources.api.impl;
+
+import io.korti.chainresources.api.blockchain.IBlock;
+import io.korti.chainresources.api.blockchain.IBlockchain;
+import io.korti.chainresources.api.blockchain.ITransactionPool;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mines blocks in the background while the game keeps ticking.
+ * {@link #tick()} has to be called once per tick from the main thread. Every tick grants the miner a CPU time budget,
+ * which all its workers share, so they mine for the budget divided by their number. The mining thread waits for the
+ * next tick once the budget is used up. Mined blocks are queued and only added to the
+ * chain by the next {@link #tick()}, so the chain, the pool and new blocks are only changed by the main thread.
+ * A block is only mined if the pool has transactions for it or if the chain still needs its genesis block.
+ */
+public class MiningScheduler {
+
+    public static final long DEFAULT_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    public static final int DEFAULT_MAX_TRANSACTIONS = 512;
+
+    private final IBlockchain blockchain;
+    private final ITransactionPool pool;
+    private final MineCoinMiner miner;
+    private final long workerNanos;     // Wall clock time per tick, all workers mine at once.
+    private final int maxTransactions;
+
+    private final ExecutorService executor;
+    private final Semaphore ticks = new Semaphore(0);
+    private final Queue<MineCoinBlock> minedBlocks = new ConcurrentLinkedQueue<>();
+
+    private Future<?> job;      // Only used by the main thread.
+    private volatile boolean running = false;
+    private long addedBlocks = 0;
+
+    public MiningScheduler(IBlockchain blockchain, ITransactionPool pool) {
+        this(blockchain, pool, new MineCoinMiner(Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+                DEFAULT_BUDGET_NANOS, DEFAULT_MAX_TRANSACTIONS);
+    }
+
+    /**
+     * @param budgetNanos CPU time all workers of the miner can use together per tick.
+     * @param maxTransactions Max number of transactions per block.
+     */
+    public MiningScheduler(IBlockchain blockchain, ITransactionPool pool, MineCoinMiner miner, long budgetNanos,
+                           int maxTransactions) {
+        this.blockchain = blockchain;
+        this.pool = pool;
+        this.miner = miner;
+        this.workerNanos = Math.max(1, budgetNanos / miner.getWorkers());
+        this.maxTransactions = maxTransactions;
+
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MineCoin Scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        this.running = true;
+    }
+
+    /**
+     * Adds the mined blocks to the chain, starts mining the next block if there is nothing being mined and grants
+     * the miner the budget for this tick. Must be called from the main thread.
+     */
+    public void tick() {
+        this.addMinedBlocks();
+        if (!this.running) {
+            return;
+        }
+
+        // A finished job puts its block into the queue before it is done, so the queue is checked after the job.
+        if ((this.job == null || this.job.isDone()) && this.minedBlocks.isEmpty()) {
+            final MineCoinBlock block = this.assembleBlock();
+            this.job = (block == null) ? null : this.executor.submit(() -> this.mine(block));
+        }
+        if (this.job != null && this.ticks.availablePermits() == 0) {
+            this.ticks.release();   // Budget is not saved up over ticks in which the miner was busy.
+        }
+    }
+
+    private void addMinedBlocks() {
+        MineCoinBlock block;
+        while ((block = this.minedBlocks.poll()) != null) {
+            if (this.blockchain.addBlock(block)) {
+                this.addedBlocks++;
+                // Transactions of blocks a reorganization left go back into the pool to get mined again.
+                this.blockchain.takeDisconnectedTransactions().forEach(this.pool::submit);
+            }
+            if (this.blockchain.getBlock(block.getHash()) == null) {
+                this.returnTransactions(block);     // Rejected or on a side branch.
+            }
+        }
+    }
+
+    /**
+     * Takes back the pending changes of the transactions of a block that didn't get into the main chain and puts the
+     * transactions back into the pool, so they get mined with the next block. The block got built here, so its
+     * transactions got processed on this chain.
+     */
+    private void returnTransactions(MineCoinBlock block) {
+        this.blockchain.discardTransactions(block.getTransactions());
+        block.getTransactions().forEach(this.pool::submit);
+    }
+
+    private MineCoinBlock assembleBlock() {
+        final IBlock lastBlock = this.blockchain.lastBlock();
+        if (lastBlock == null) {
+            return new MineCoinBlock("0", this.blockchain.getDifficultyBits());
+        }
+        if (this.pool.size() == 0) {
+            return null;
+        }
+
+        final MineCoinBlock block = new MineCoinBlock(lastBlock.getHash(), this.blockchain.getDifficultyBits());
+        return (this.pool.fillBlock(block, this.maxTransactions) > 0) ? block : null;
+    }
+
+    private void mine(MineCoinBlock block) {
+        try {
+            while (this.running) {
+                this.ticks.acquire();
+                if (this.miner.mineBits(block, block.getDifficultyBits(), System.nanoTime() + this.workerNanos)) {
+                    this.minedBlocks.offer(block);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops mining and adds the blocks that already got mined to the chain. Must be called from the main thread.
+     * @return True if the mining thread stopped in time otherwise false.
+     */
+    public boolean shutdown() {
+        this.running = false;
+        this.executor.shutdownNow();
+        boolean stopped;
+        try {
+            stopped = this.executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            stopped = false;
+            Thread.currentThread().interrupt();
+        }
+        this.miner.shutdown();
+        this.addMinedBlocks();
+        return stopped;
+    }
+
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Returns the number of blocks the scheduler added to the chain.
+     */
+    public long getAddedBlocks() {
+        return this.addedBlocks;
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package io.korti.chainresources.api.impl;
+
+import io.korti.chainresources.api.blockchain.IBlock;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps blocks whose previous block isn't known yet, until it arrives. The blocks are indexed by their previous hash,
+ * so all children of a block are found at once.
+ * The pool is bounded by the age of the blocks and their estimated memory. Blocks older than the max age get evicted
+ * on every insert and if the pool is full, the oldest blocks make room for the new one.
+ */
+public class OrphanPool {
+
+    public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    public static final long DEFAULT_MAX_BYTES = 8 << 20;
+
+    private static final int BLOCK_BYTES = 512;         // Rough heap size of a block without transactions.
+    private static final int TRANSACTION_BYTES = 1024;  // Rough heap size of a transaction with its keys.
+
+    private final long maxAgeMillis;
+    private final long maxBytes;
+    private final LongSupplier clock;
+
+    private final LinkedHashMap<String, Orphan> orphans = new LinkedHashMap<>();    // By hash, the oldest first.
+    private final Map<String, List<Orphan>> children = new HashMap<>();  // By previous hash.
+    private long bytes = 0;
+
+    public OrphanPool() {
+        this(DEFAULT_MAX_AGE_MILLIS, DEFAULT_MAX_BYTES);
+    }
+
+    public OrphanPool(long maxAgeMillis, long maxBytes) {
+        this(maxAgeMillis, maxBytes, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock Returns the current time in milliseconds.
+     */
+    public OrphanPool(long maxAgeMillis, long maxBytes, LongSupplier clock) {
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxBytes = maxBytes;
+        this.clock = clock;
+    }
+
+    /**
+     * Adds the block to the pool.
+     * @param block Block whose previous block isn't known.
+     * @return True if the block is kept, false if it's already in the pool or too big for it.
+     */
+    public synchronized boolean add(IBlock block) {
+        if (block.getHash() == null || block.getPreviousHash() == null || this.orphans.containsKey(block.getHash())) {
+            return false;
+        }
+        final long now = this.clock.getAsLong();
+        this.evictStale(now);
+
+        final Orphan orphan = new Orphan(block, now, estimateBytes(block));
+        if (orphan.bytes > this.maxBytes) {
+            return false;
+        }
+        while (this.bytes + orphan.bytes > this.maxBytes) {
+            this.evict(this.orphans.values().iterator().next());
+        }
+
+        this.orphans.put(block.getHash(), orphan);
+        this.children.computeIfAbsent(block.getPreviousHash(), hash -> new ArrayList<>(1)).add(orphan);
+        this.bytes += orphan.bytes;
+        return true;
+    }
+
+    /**
+     * Removes the blocks that build on the block with the hash.
+     * @param hash Hash of the previous block.
+     * @return The blocks in the order they got added.
+     */
+    public synchronized List<IBlock> removeChildren(String hash) {
+        final List<Orphan> orphans = this.children.remove(hash);
+        if (orphans == null) {
+            return Collections.emptyList();
+        }
+        final List<IBlock> blocks = new ArrayList<>(orphans.size());
+        for (Orphan orphan : orphans) {
+            this.orphans.remove(orphan.block.getHash());
+            this.bytes -= orphan.bytes;
+            blocks.add(orphan.block);
+        }
+        return blocks;
+    }
+
+    /**
+     * Evicts the blocks that are older than the max age.
+     */
+    public synchronized void evictStale() {
+        this.evictStale(this.clock.getAsLong());
+    }
+
+    private void evictStale(long now) {
+        final Iterator<Orphan> iterator = this.orphans.values().iterator();
+        while (iterator.hasNext()) {
+            final Orphan orphan = iterator.next();
+            if (now - orphan.addedMillis <= this.maxAgeMillis) {
+                break;  // All newer blocks are younger.
+            }
+            iterator.remove();
+            this.removeChild(orphan);
+        }
+    }
+
+    private void evict(Orphan orphan) {
+        this.orphans.remove(orphan.block.getHash());
+        this.removeChild(orphan);
+    }
+
+    private void removeChild(Orphan orphan) {
+        final List<Orphan> siblings = this.children.get(orphan.block.getPreviousHash());
+        siblings.remove(orphan);
+        if (siblings.isEmpty()) {
+            this.children.remove(orphan.block.getPreviousHash());
+        }
+        this.bytes -= orphan.bytes;
+        Metrics.Counter.ORPHANS_EVICTED.increment();
+    }
+
+    public synchronized boolean contains(String hash) {
+        return this.orphans.containsKey(hash);
+    }
+
+    public synchronized int size() {
+        return this.orphans.size();
+    }
+
+    /**
+     * @return Estimated memory of the blocks in the pool.
+     */
+    public synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    private static int estimateBytes(IBlock block) {
+        return BLOCK_BYTES + block.getTransactions().size() * TRANSACTION_BYTES;
+    }
+
+    private static final class Orphan {
+
+        private final IBlock block;
+        private final long addedMillis;
+        private final int bytes;
+
+        private Orphan(IBlock block, long addedMillis, int bytes) {
+            this.block = block;
+            this.addedMillis = addedMillis;
+            this.bytes = bytes;
+        }
+    }
+
+}
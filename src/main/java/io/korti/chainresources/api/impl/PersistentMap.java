@@ -0,0 +1,450 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.korti.chainresources.api.impl;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable hash map where every change returns a new version that shares all unchanged parts with the old one
+ * (hash array mapped trie). A change only copies the path from the root to the changed entry, so it costs
+ * O(log32 n) and old versions stay valid as cheap snapshots.
+ * The {@link Map} methods that change the map throw an {@link UnsupportedOperationException}, use
+ * {@link #plus(Object, Object)} and {@link #minus(Object)} instead.
+ */
+public final class PersistentMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    private static int hash(Object key) {
+        final int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Returns a version of the map with the key mapped to the value.
+     */
+    public PersistentMap<K, V> plus(K key, V value) {
+        Objects.requireNonNull(key);
+        final boolean[] added = new boolean[1];
+        final Node root = (this.root == null) ? BitmapNode.EMPTY : this.root;
+        final Node newRoot = root.put(0, hash(key), key, value, added);
+        if (newRoot == this.root) {
+            return this;
+        }
+        return new PersistentMap<>(newRoot, added[0] ? this.size + 1 : this.size);
+    }
+
+    /**
+     * Returns a version of the map without the key.
+     */
+    public PersistentMap<K, V> minus(Object key) {
+        if (this.root == null || key == null) {
+            return this;
+        }
+        final Node newRoot = this.root.remove(0, hash(key), key);
+        if (newRoot == this.root) {
+            return this;
+        }
+        return (newRoot == null) ? empty() : new PersistentMap<>(newRoot, this.size - 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        final Entry entry = this.find(key);
+        return (entry == null) ? null : (V) entry.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return this.find(key) != null;
+    }
+
+    private Entry find(Object key) {
+        if (key == null) {
+            return null;
+        }
+        final int hash = hash(key);
+        Node node = this.root;
+        int shift = 0;
+        while (node != null) {
+            final Object slot = node.find(shift, hash, key);
+            if (slot instanceof Node) {
+                node = (Node) slot;
+                shift += BITS;
+            } else {
+                return (Entry) slot;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new EntryIterator<>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static final class Entry implements Map.Entry<Object, Object> {
+
+        private final int hash;
+        private final Object key;
+        private final Object value;
+
+        private Entry(int hash, Object key, Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        private boolean matches(int hash, Object key) {
+            return this.hash == hash && this.key.equals(key);
+        }
+
+        @Override
+        public Object getKey() {
+            return this.key;
+        }
+
+        @Override
+        public Object getValue() {
+            return this.value;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Map.Entry)) {
+                return false;
+            }
+            final Map.Entry<?, ?> entry = (Map.Entry<?, ?>) other;
+            return this.key.equals(entry.getKey()) && Objects.equals(this.value, entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return this.key.hashCode() ^ Objects.hashCode(this.value);
+        }
+    }
+
+    private abstract static class Node {
+
+        /**
+         * Slots of the node, every slot is an {@link Entry} or a child {@link Node}.
+         */
+        abstract Object[] slots();
+
+        /**
+         * Returns the entry with the key, the child node to continue in or null if the key is not in the node.
+         */
+        abstract Object find(int shift, int hash, Object key);
+
+        abstract Node put(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /**
+         * Returns the node without the key, null if the node is empty afterwards or the same node if the key is not
+         * in it.
+         */
+        abstract Node remove(int shift, int hash, Object key);
+
+        /**
+         * Returns the entry if the node only holds one entry and no children, so the parent can take it over.
+         */
+        Entry single() {
+            final Object[] slots = this.slots();
+            return (slots.length == 1 && slots[0] instanceof Entry) ? (Entry) slots[0] : null;
+        }
+    }
+
+    private static final class BitmapNode extends Node {
+
+        private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;   // Bit n is set if the slot for the hash fragment n is used.
+        private final Object[] slots;
+
+        private BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        private static Node create(int shift, Entry first, Entry second) {
+            if (shift >= Integer.SIZE) {
+                return new CollisionNode(new Object[]{first, second});  // All hash bits are used up.
+            }
+            final boolean[] added = new boolean[1];
+            return EMPTY.put(shift, first.hash, first.key, first.value, added)
+                    .put(shift, second.hash, second.key, second.value, added);
+        }
+
+        @Override
+        Object[] slots() {
+            return this.slots;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(this.bitmap & (bit - 1));
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            final int bit = 1 << ((hash >>> shift) & MASK);
+            if ((this.bitmap & bit) == 0) {
+                return null;
+            }
+            final Object slot = this.slots[this.index(bit)];
+            if (slot instanceof Entry) {
+                return ((Entry) slot).matches(hash, key) ? slot : null;
+            }
+            return slot;
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            final int bit = 1 << ((hash >>> shift) & MASK);
+            final int index = this.index(bit);
+
+            if ((this.bitmap & bit) == 0) {
+                final Object[] slots = new Object[this.slots.length + 1];
+                System.arraycopy(this.slots, 0, slots, 0, index);
+                System.arraycopy(this.slots, index, slots, index + 1, this.slots.length - index);
+                slots[index] = new Entry(hash, key, value);
+                added[0] = true;
+                return new BitmapNode(this.bitmap | bit, slots);
+            }
+
+            final Object slot = this.slots[index];
+            final Object newSlot;
+            if (slot instanceof Node) {
+                newSlot = ((Node) slot).put(shift + BITS, hash, key, value, added);
+            } else {
+                final Entry entry = (Entry) slot;
+                if (entry.matches(hash, key)) {
+                    if (entry.value == value) {
+                        return this;
+                    }
+                    newSlot = new Entry(hash, key, value);
+                } else {
+                    added[0] = true;
+                    newSlot = create(shift + BITS, entry, new Entry(hash, key, value));
+                }
+            }
+            return (newSlot == slot) ? this : this.with(index, newSlot);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            final int bit = 1 << ((hash >>> shift) & MASK);
+            if ((this.bitmap & bit) == 0) {
+                return this;
+            }
+            final int index = this.index(bit);
+            final Object slot = this.slots[index];
+
+            if (slot instanceof Node) {
+                final Node child = ((Node) slot).remove(shift + BITS, hash, key);
+                if (child == slot) {
+                    return this;
+                }
+                if (child != null) {
+                    final Entry single = child.single();
+                    return this.with(index, (single != null) ? single : child);
+                }
+            } else if (!((Entry) slot).matches(hash, key)) {
+                return this;
+            }
+
+            if (this.slots.length == 1) {
+                return null;
+            }
+            final Object[] slots = new Object[this.slots.length - 1];
+            System.arraycopy(this.slots, 0, slots, 0, index);
+            System.arraycopy(this.slots, index + 1, slots, index, slots.length - index);
+            return new BitmapNode(this.bitmap ^ bit, slots);
+        }
+
+        private BitmapNode with(int index, Object slot) {
+            final Object[] slots = this.slots.clone();
+            slots[index] = slot;
+            return new BitmapNode(this.bitmap, slots);
+        }
+    }
+
+    /**
+     * Holds entries whose keys have the same hash, only used after all bits of the hash got used.
+     */
+    private static final class CollisionNode extends Node {
+
+        private final Object[] entries;
+
+        private CollisionNode(Object[] entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        Object[] slots() {
+            return this.entries;
+        }
+
+        private int indexOf(int hash, Object key) {
+            for (int i = 0; i < this.entries.length; i++) {
+                if (((Entry) this.entries[i]).matches(hash, key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            final int index = this.indexOf(hash, key);
+            return (index < 0) ? null : this.entries[index];
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            final int index = this.indexOf(hash, key);
+            final Object[] entries;
+            if (index < 0) {
+                entries = new Object[this.entries.length + 1];
+                System.arraycopy(this.entries, 0, entries, 0, this.entries.length);
+                entries[this.entries.length] = new Entry(hash, key, value);
+                added[0] = true;
+            } else {
+                if (((Entry) this.entries[index]).value == value) {
+                    return this;
+                }
+                entries = this.entries.clone();
+                entries[index] = new Entry(hash, key, value);
+            }
+            return new CollisionNode(entries);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            final int index = this.indexOf(hash, key);
+            if (index < 0) {
+                return this;
+            }
+            if (this.entries.length == 1) {
+                return null;
+            }
+            final Object[] entries = new Object[this.entries.length - 1];
+            System.arraycopy(this.entries, 0, entries, 0, index);
+            System.arraycopy(this.entries, index + 1, entries, index, entries.length - index);
+            return new CollisionNode(entries);
+        }
+    }
+
+    /**
+     * Walks the trie depth first with a stack of the slots that still have to be visited.
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+
+        private final Deque<Object[]> slots = new ArrayDeque<>();
+        private final Deque<Integer> positions = new ArrayDeque<>();
+        private Entry next;
+
+        private EntryIterator(Node root) {
+            if (root != null) {
+                this.slots.push(root.slots());
+                this.positions.push(0);
+            }
+            this.advance();
+        }
+
+        private void advance() {
+            this.next = null;
+            while (this.next == null && !this.slots.isEmpty()) {
+                final Object[] slots = this.slots.peek();
+                final int position = this.positions.pop();
+                if (position == slots.length) {
+                    this.slots.pop();
+                    continue;
+                }
+                this.positions.push(position + 1);
+
+                final Object slot = slots[position];
+                if (slot instanceof Node) {
+                    this.slots.push(((Node) slot).slots());
+                    this.positions.push(0);
+                } else {
+                    this.next = (Entry) slot;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (this.next == null) {
+                throw new NoSuchElementException();
+            }
+            final Entry entry = this.next;
+            this.advance();
+            return (Map.Entry<K, V>) (Map.Entry<?, ?>) entry;
+        }
+    }
+
+}
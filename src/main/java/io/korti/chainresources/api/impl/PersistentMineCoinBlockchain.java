@@ -0,0 +1,267 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.korti.chainresources.api.impl;
+
+import io.korti.chainresources.api.blockchain.IBlock;
+import io.korti.chainresources.api.blockchain.IChainStore;
+import io.korti.chainresources.api.blockchain.ITransaction;
+import io.korti.chainresources.api.blockchain.ITransactionInput;
+import io.korti.chainresources.api.blockchain.ITransactionOutput;
+
+import java.io.Closeable;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link MineCoinBlockchain} that keeps its blocks on disk in a {@link MappedChainStore}, so the chain survives a
+ * server restart and doesn't have to fit on the heap.
+ * <p>
+ * Every change of the UTXOs of the main chain is recorded in a {@link WriteAheadLog} as one record before it gets
+ * applied: one per connected block, per reorganization and per change outside of a block. The pending changes of
+ * transactions that wait for their block aren't logged. They are gone after a restart, like the blocks that were
+ * being built, so the log gives the same UTXOs as rebuilding them from the blocks. Records are appended while holding
+ * the lock of the chain. How long a change waits for its record to be forced depends on the
+ * {@link WriteAheadLog.Durability}. The waiting happens after the lock got released, so changes that wait at the same
+ * time share one fsync. A change is visible before its record is forced. If forcing fails, the waiting writer gets
+ * the failure and the log rejects every later change, so the chain doesn't go on without it. Every snapshot
+ * interval of blocks, the UTXOs of the main chain get written into a {@link UTXOSnapshotStore} in the background and
+ * the log continues in a new file.
+ * On opening, the UTXOs are loaded from the newest valid snapshot and the log behind it is replayed. A chain without
+ * a log rebuilds the UTXOs from the stored transactions instead. The blocks should be checked with
+ * {@link #revalidate()} after opening.
+ */
+public class PersistentMineCoinBlockchain extends MineCoinBlockchain implements Closeable {
+
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 1000;
+
+    private final UTXOSnapshotStore snapshotStore;
+    private final int snapshotInterval;     // Snapshots are off while this is 0.
+    private final ExecutorService snapshotWriter = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "MineCoin Snapshot Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final WriteAheadLog log;
+    private boolean recovered = false;  // Recovered changes don't get logged again.
+    private long logged = 0;    // Sequence number of the last record, guarded by the chain.
+    private int restoredHeight = -1;
+    private int snapshotHeight = 0;     // Height of the last snapshot.
+
+    public PersistentMineCoinBlockchain(Path directory) {
+        this(directory, 0.01f, 2);
+    }
+
+    public PersistentMineCoinBlockchain(Path directory, float minTransactionValue, int startDifficulty) {
+        this(directory, minTransactionValue, startDifficulty, MappedChainStore.DEFAULT_SEGMENT_SIZE,
+                DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    public PersistentMineCoinBlockchain(Path directory, float minTransactionValue, int startDifficulty,
+                                        int segmentSize) {
+        this(directory, minTransactionValue, startDifficulty, segmentSize, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    public PersistentMineCoinBlockchain(Path directory, float minTransactionValue, int startDifficulty,
+                                        int segmentSize, int snapshotInterval) {
+        this(directory, minTransactionValue, startDifficulty, segmentSize, snapshotInterval,
+                WriteAheadLog.Durability.PER_BLOCK);
+    }
+
+    public PersistentMineCoinBlockchain(Path directory, float minTransactionValue, int startDifficulty,
+                                        int segmentSize, int snapshotInterval, WriteAheadLog.Durability durability) {
+        super(minTransactionValue, startDifficulty,
+                blockchain -> new MappedChainStore(directory, blockchain, segmentSize));
+        this.snapshotStore = new UTXOSnapshotStore(directory);
+        this.snapshotInterval = snapshotInterval;
+        this.log = new WriteAheadLog(directory, durability);
+        this.recoverUTXOs();
+        this.recovered = true;
+        this.snapshotHeight = Math.max(this.snapshotHeight, this.height());
+    }
+
+    private void recoverUTXOs() {
+        final IChainStore store = this.getChainStore();
+        final UTXOSnapshotStore.Snapshot snapshot = this.snapshotStore.loadNewest(store);
+
+        if (snapshot != null && this.log.hasFile(snapshot.getHeight() + 1)) {
+            this.applyUTXOs(snapshot.getUTXOs(), Collections.emptyList());
+            this.restoredHeight = snapshot.getHeight();
+            this.log.replay(snapshot.getHeight() + 1, this::applyUTXOs);
+        } else if (this.log.hasFile(0)) {
+            this.log.replay(0, this::applyUTXOs);
+        } else {
+            this.rebuildUTXOs(snapshot);
+            // The log doesn't fit to the UTXOs, it starts again with a snapshot of the rebuilt ones.
+            if (store.size() == 0) {
+                this.log.roll(0);
+            } else {
+                try {
+                    this.snapshot().get();
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    private void rebuildUTXOs(UTXOSnapshotStore.Snapshot snapshot) {
+        if (snapshot != null) {
+            this.applyUTXOs(snapshot.getUTXOs(), Collections.emptyList());
+            this.restoredHeight = snapshot.getHeight();
+        }
+
+        final IChainStore store = this.getChainStore();
+        for (int height = this.restoredHeight + 1; height < store.size(); height++) {
+            final IBlock block = store.get(height);
+            for (ITransaction transaction : block.getTransactions()) {
+                // Same order as on processing the transaction, first the outputs get added then the inputs spent.
+                this.applyUTXOs(transaction.getOutputs(), Collections.emptyList());
+                for (ITransactionInput input : transaction.getInputs()) {
+                    this.applyUTXOs(Collections.emptyList(), Collections.singletonList(input.getTransactionOutputID()));
+                }
+            }
+        }
+    }
+
+    private void applyUTXOs(Collection<ITransactionOutput> added, Collection<String> removedIds) {
+        super.updateConfirmedUTXOs(added, removedIds);
+    }
+
+    /**
+     * Appends the change to the log. A change that can't be logged doesn't get applied.
+     * @throws UncheckedIOException If the log failed.
+     */
+    @Override
+    protected void logConfirmed(Collection<ITransactionOutput> added, Collection<String> removedIds) {
+        if (this.recovered && (!added.isEmpty() || !removedIds.isEmpty())) {
+            this.logged = this.log.logUpdate(added, removedIds);
+        }
+    }
+
+    /**
+     * Changes the UTXOs like the super class and waits for the record with
+     * {@link WriteAheadLog.Durability#PER_TRANSACTION}.
+     */
+    @Override
+    protected boolean updateConfirmedUTXOs(Collection<ITransactionOutput> added, Collection<String> removedIds) {
+        final long sequence;
+        synchronized (this) {
+            if (!super.updateConfirmedUTXOs(added, removedIds)) {
+                return false;
+            }
+            sequence = this.logged;
+        }
+        if (this.log != null && this.log.getDurability() == WriteAheadLog.Durability.PER_TRANSACTION) {
+            this.awaitLog(sequence);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean addBlock(IBlock block) {
+        final long sequence;
+        synchronized (this) {
+            if (!super.addBlock(block)) {
+                return false;
+            }
+            final int height = this.height();
+            // Connected orphans can add several blocks at once, so the interval is checked by the blocks passed.
+            if (this.snapshotInterval > 0
+                    && height / this.snapshotInterval > this.snapshotHeight / this.snapshotInterval) {
+                this.snapshot();    // Forces the log as well.
+            }
+            sequence = this.logged;
+        }
+        if (this.log.getDurability() != WriteAheadLog.Durability.TIMED) {
+            this.awaitLog(sequence);
+        }
+        return true;
+    }
+
+    /**
+     * Waits outside of the lock of the chain until the record is forced, writers that wait together share one fsync.
+     */
+    private void awaitLog(long sequence) {
+        this.log.awaitDurable(sequence);
+        if (!this.log.isDurable(sequence)) {
+            throw new IllegalStateException("Interrupted while waiting for the log.");
+        }
+    }
+
+    /**
+     * Writes a snapshot of the UTXOs in the background and continues the log in a new file.
+     * @return Future that is done when the snapshot got written.
+     */
+    public synchronized Future<?> snapshot() {
+        final int height = this.height();
+        final IBlock block = this.lastBlock();
+        if (block == null) {
+            return this.snapshotWriter.submit(() -> { });
+        }
+
+        this.snapshotHeight = height;
+        // The UTXOs of the main chain only change under the lock of the chain, so the new log file starts with the
+        // changes after them. They are immutable, so they can be written while the chain goes on.
+        final Map<String, ITransactionOutput> utxos = this.getConfirmedUTXOs();
+        this.log.roll(height + 1);
+
+        final String hash = block.getHash();
+        return this.snapshotWriter.submit(() -> {
+            final long start = System.nanoTime();
+            try {
+                this.snapshotStore.write(height, hash, utxos.values());
+                Metrics.Latency.UTXO_SNAPSHOT.recordSince(start);
+                Metrics.Counter.UTXO_SNAPSHOTS_WRITTEN.increment();
+                // The log is only needed from the oldest snapshot that is kept on.
+                this.log.deleteBefore(this.snapshotStore.getOldestHeight() + 1);
+            } catch (UncheckedIOException e) {
+                Metrics.Counter.UTXO_SNAPSHOTS_FAILED.increment();  // The next snapshot tries again.
+            }
+        });
+    }
+
+    /**
+     * @return Height of the snapshot the UTXOs got loaded from on opening, -1 if they got rebuilt from the start.
+     */
+    public int getRestoredHeight() {
+        return this.restoredHeight;
+    }
+
+    @Override
+    public void close() {
+        this.snapshotWriter.shutdown();
+        try {
+            this.snapshotWriter.awaitTermination(30, TimeUnit.SECONDS);   // A started snapshot gets finished.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            this.log.close();
+        } finally {
+            ((MappedChainStore) this.getChainStore()).close();
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.korti.chainresources.api.impl;
+
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers which signatures already got verified, so checking the same signature again only costs a SHA-256 hash
+ * and a map lookup instead of a RSA verify.
+ * An entry is the digest of (algorithm, public key, signed data, signature). Only valid signatures are stored.
+ * The cache is split into stripes with their own lock and every stripe drops its least recently used entry when it is
+ * full.
+ */
+public class SignatureCache {
+
+    private static final int STRIPES = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxEntries Max number of entries over all stripes.
+     */
+    public SignatureCache(int maxEntries) {
+        if (maxEntries < STRIPES) {
+            throw new IllegalArgumentException("The cache needs at least " + STRIPES + " entries.");
+        }
+        for (int i = 0; i < STRIPES; i++) {
+            this.stripes[i] = new Stripe(maxEntries / STRIPES);
+        }
+    }
+
+    /**
+     * Checks if the signature already got verified and counts the result as hit or miss.
+     */
+    public boolean contains(String algorithm, PublicKey key, byte[] data, byte[] signature) {
+        final Entry entry = new Entry(algorithm, key, data, signature);
+        final boolean found = this.stripeOf(entry).contains(entry);
+        (found ? this.hits : this.misses).increment();
+        return found;
+    }
+
+    /**
+     * Stores a signature that got verified successfully.
+     */
+    public void add(String algorithm, PublicKey key, byte[] data, byte[] signature) {
+        final Entry entry = new Entry(algorithm, key, data, signature);
+        this.stripeOf(entry).add(entry);
+    }
+
+    private Stripe stripeOf(Entry entry) {
+        return this.stripes[entry.hash & (STRIPES - 1)];
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Returns the share of lookups that found a verified signature, or 0 if there was no lookup yet.
+     */
+    public double getHitRate() {
+        final long hits = this.hits.sum();
+        final long total = hits + this.misses.sum();
+        return (total == 0) ? 0 : (double) hits / total;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : this.stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * Removes all entries and resets the hit and miss counters.
+     */
+    public void clear() {
+        for (Stripe stripe : this.stripes) {
+            stripe.clear();
+        }
+        this.hits.reset();
+        this.misses.reset();
+    }
+
+    private static final class Stripe {
+
+        private final Map<Entry, Boolean> entries;
+
+        private Stripe(int maxEntries) {
+            this.entries = new LruMap(maxEntries);
+        }
+
+        private synchronized boolean contains(Entry entry) {
+            return this.entries.get(entry) != null;     // get instead of containsKey to update the access order.
+        }
+
+        private synchronized void add(Entry entry) {
+            this.entries.put(entry, Boolean.TRUE);
+        }
+
+        private synchronized int size() {
+            return this.entries.size();
+        }
+
+        private synchronized void clear() {
+            this.entries.clear();
+        }
+    }
+
+    /**
+     * Map in access order that drops the least recently used entry when it gets full.
+     */
+    private static final class LruMap extends LinkedHashMap<Entry, Boolean> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        private LruMap(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Entry, Boolean> eldest) {
+            return this.size() > this.maxEntries;
+        }
+    }
+
+    private static final class Entry {
+
+        private final byte[] digest;
+        private final int hash;
+
+        private Entry(String algorithm, PublicKey key, byte[] data, byte[] signature) {
+            final MessageDigest digest = Util.getDigest("SHA-256");
+            update(digest, algorithm.getBytes());
+            update(digest, TransactionEncoding.fingerprint(key));
+            update(digest, data);
+            update(digest, signature);
+            this.digest = digest.digest();
+            this.hash = Arrays.hashCode(this.digest);
+        }
+
+        // The length prefix keeps the parts apart, so moving bytes from one part to the next gives another digest.
+        private static void update(MessageDigest digest, byte[] part) {
+            digest.update((byte) (part.length >>> 24));
+            digest.update((byte) (part.length >>> 16));
+            digest.update((byte) (part.length >>> 8));
+            digest.update((byte) part.length);
+            digest.update(part);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Entry && Arrays.equals(this.digest, ((Entry) other).digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+}
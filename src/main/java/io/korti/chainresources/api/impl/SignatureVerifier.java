@@ -0,0 +1,122 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.korti.chainresources.api.impl;
+
+import io.korti.chainresources.api.blockchain.ITransaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verifies the signatures of many transactions at once on a pool of worker threads.
+ * Every worker checks a contiguous slice of the list and uses the cached {@link java.security.Signature} of its
+ * thread. Nothing but the signatures gets checked here, the UTXOs still have to be updated in order on one thread.
+ */
+public class SignatureVerifier {
+
+    private static final int MIN_BATCH = 4;     // Smaller batches are verified on the calling thread.
+
+    private final int workers;
+    private final ExecutorService executor;
+
+    public SignatureVerifier() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public SignatureVerifier(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("A verifier needs at least one worker.");
+        }
+        this.workers = workers;
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "MineCoin Verifier #" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the verifier that is shared by all blocks.
+     */
+    public static SignatureVerifier getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Verifies the signatures of all transactions.
+     * @param transactions Transactions to verify.
+     * @return The result for every transaction, in the same order as the list.
+     */
+    public boolean[] verifyAll(List<? extends ITransaction> transactions) {
+        final boolean[] results = new boolean[transactions.size()];
+        final int slices = Math.min(workers, transactions.size() / MIN_BATCH);
+        if (slices < 2) {
+            verifySlice(transactions, results, 0, results.length);
+            return results;
+        }
+
+        final int sliceSize = (results.length + slices - 1) / slices;
+        final List<Future<?>> futures = new ArrayList<>(slices);
+        for (int from = 0; from < results.length; from += sliceSize) {
+            final int start = from;
+            final int end = Math.min(from + sliceSize, results.length);
+            futures.add(executor.submit(() -> verifySlice(transactions, results, start, end)));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();   // Also makes the writes of the workers to the results visible.
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        return results;
+    }
+
+    private static void verifySlice(List<? extends ITransaction> transactions, boolean[] results, int from, int to) {
+        for (int i = from; i < to; i++) {
+            final ITransaction transaction = transactions.get(i);
+            results[i] = transaction != null && transaction.verifySignature();
+        }
+    }
+
+    public int getWorkers() {
+        return this.workers;
+    }
+
+    /**
+     * Stops the worker threads. The verifier can't be used afterwards.
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    private static final class DefaultHolder {
+        private static final SignatureVerifier INSTANCE = new SignatureVerifier();
+    }
+
+}
@@ -26,6 +26,7 @@ import java.security.PublicKey;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoField;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class Transaction implements ITransaction {
@@ -35,6 +36,8 @@ public class Transaction implements ITransaction {
     private PublicKey receiver;
     private float value;
     private byte[] signature = new byte[256];
+    private byte[] signedData;  // Canonical form of keys and value, see TransactionEncoding.
+    private volatile Boolean verified;  // Result of the last signature check, sender, receiver and value can't change.
 
     private List<ITransactionInput> inputs = new ArrayList<>();
     private List<ITransactionOutput> outputs = new ArrayList<>();
@@ -53,14 +56,62 @@ public class Transaction implements ITransaction {
         this.timestamp = LocalDateTime.now().getLong(ChronoField.EPOCH_DAY);
     }
 
+    /**
+     * Restores an already processed transaction, for example after reading it from disk.
+     */
+    Transaction(IBlockchain blockchain, String id, PublicKey sender, PublicKey receiver, float value, long timestamp,
+                byte[] signature, List<ITransactionInput> inputs, List<ITransactionOutput> outputs) {
+        this.id = id;
+        this.sender = sender;
+        this.receiver = receiver;
+        this.value = value;
+        this.timestamp = timestamp;
+        this.signature = signature;
+        this.inputs = inputs;
+        this.outputs = outputs;
+
+        this.blockchain = blockchain;
+    }
+
     @Override
     public String getId() {
         return id;
     }
 
+    @Override
+    public List<ITransactionInput> getInputs() {
+        return (this.inputs == null) ? Collections.emptyList() : Collections.unmodifiableList(this.inputs);
+    }
+
+    @Override
+    public List<ITransactionOutput> getOutputs() {
+        return Collections.unmodifiableList(this.outputs);
+    }
+
+    PublicKey getSender() {
+        return this.sender;
+    }
+
+    PublicKey getReceiver() {
+        return this.receiver;
+    }
+
+    float getValue() {
+        return this.value;
+    }
+
+    long getTimestamp() {
+        return this.timestamp;
+    }
+
+    byte[] getSignature() {
+        return this.signature;
+    }
+
     @Override
     public boolean processTransaction() {
         if (!verifySignature()) {
+            Metrics.Counter.TRANSACTIONS_INVALID_SIGNATURE.increment();
             return false;   // Transaction signature failed to verify.
         }
 
@@ -68,35 +119,60 @@ public class Transaction implements ITransaction {
 
         float funds = calculateFunds();
         if (funds < blockchain.getMinTransactionValue()) {
+            Metrics.Counter.TRANSACTIONS_FUNDS_TOO_LOW.increment();
             return false;   // Funds value to small for a transaction.
         }
 
         float fundsLeft = funds - this.value;
-        this.id = calculateHash();
-        this.outputs.add(new TransactionOutput(this.receiver, value, this.id));
-        this.outputs.add(new TransactionOutput(this.sender, fundsLeft, this.id));
-
-        this.outputs.forEach(blockchain::addUTXO);
-
-        this.inputs.stream().filter(i -> i.getUTXO() != null).forEach(i -> blockchain.removeUTXO(i.getUTXO().getID()));
+        final String id = calculateHash();
+        final List<ITransactionOutput> outputs = new ArrayList<>(2);
+        final byte[] signedData = getSignedData();
+        outputs.add(new TransactionOutput(this.receiver, TransactionEncoding.fingerprint(signedData, true), value, id));
+        outputs.add(new TransactionOutput(this.sender, TransactionEncoding.fingerprint(signedData, false), fundsLeft,
+                id));
+
+        final List<String> spent = new ArrayList<>(this.inputs.size());
+        this.inputs.stream().filter(i -> i.getUTXO() != null).forEach(i -> spent.add(i.getUTXO().getID()));
+
+        if (!blockchain.updateUTXOs(outputs, spent)) {
+            Metrics.Counter.TRANSACTIONS_INPUTS_SPENT.increment();
+            return false;   // An input got spent by another transaction in the meantime.
+        }
+        this.id = id;
+        this.outputs.clear();   // Outputs of an earlier block, if the transaction gets mined again.
+        this.outputs.addAll(outputs);
+        Metrics.Counter.TRANSACTIONS_PROCESSED.increment();
 
         return true;
     }
 
     @Override
     public void generateSignature(PrivateKey key) {
-        String data = Util.keyToString(this.sender) + Util.keyToString(this.receiver) + value;
-        this.signature = Util.applySHA256RSASig(key, data);
+        this.signature = Util.applySignature(key, getSignedData(),
+                SignatureScheme.of(key).getSignatureAlgorithm());
+        this.verified = null;
     }
 
     @Override
     public boolean verifySignature() {
-        String data = Util.keyToString(this.sender) + Util.keyToString(this.receiver) + value;
-        return Util.verifySHA256RSASig(this.sender, data, this.signature);
+        Boolean result = this.verified;
+        if (result == null) {
+            result = Util.verifySignature(this.sender, getSignedData(), this.signature,
+                    SignatureScheme.of(this.sender).getSignatureAlgorithm());
+            this.verified = result;
+        }
+        return result;
+    }
+
+    private byte[] getSignedData() {
+        if (this.signedData == null) {
+            this.signedData = TransactionEncoding.signedData(this.sender, this.receiver, this.value);
+        }
+        return this.signedData;
     }
 
     private String calculateHash() {
-        return Util.toMD5(Util.keyToString(this.sender) + Util.keyToString(this.receiver) + value + timestamp);
+        return TransactionEncoding.transactionId(getSignedData(), this.timestamp);
     }
 
     private float calculateFunds() {
@@ -0,0 +1,112 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.korti.chainresources.api.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Canonical binary form of transactions and outputs that gets signed and hashed. Keys are written as their
+ * fingerprint, the SHA-256 hash of the encoded key, which is only calculated once per key. The fingerprints are kept
+ * in maps with weak keys that are striped by the identity of the key, so threads rarely wait for each other.
+ * | sender fingerprint (32 bytes) | receiver fingerprint (32 bytes) | value (float) |       signed data
+ * | signed data | timestamp (long) |                                                       transaction ID (MD5)
+ * | receiver fingerprint (32 bytes) | parent transaction ID length (int) | parent ID (UTF-8) |   output ID (SHA-256)
+ */
+final class TransactionEncoding {
+
+    static final int FINGERPRINT_LENGTH = 32;
+    static final int SIGNED_DATA_LENGTH = 2 * FINGERPRINT_LENGTH + Float.BYTES;
+
+    private static final int FINGERPRINT_STRIPES = 16;
+    private static final FingerprintStripe[] FINGERPRINTS = new FingerprintStripe[FINGERPRINT_STRIPES];
+
+    // The encodings are only needed until they got hashed, so every thread reuses one buffer.
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocate(256));
+
+    static {
+        for (int i = 0; i < FINGERPRINT_STRIPES; i++) {
+            FINGERPRINTS[i] = new FingerprintStripe();
+        }
+    }
+
+    private TransactionEncoding() {
+    }
+
+    /**
+     * Returns the fingerprint of the key. The array is shared and must not be changed.
+     */
+    static byte[] fingerprint(PublicKey key) {
+        return FINGERPRINTS[System.identityHashCode(key) & (FINGERPRINT_STRIPES - 1)].get(key);
+    }
+
+    /**
+     * Returns the fingerprint of the sender or of the receiver that is part of the signed data.
+     * @param receiver True for the receiver, false for the sender.
+     */
+    static byte[] fingerprint(byte[] signedData, boolean receiver) {
+        final int from = receiver ? FINGERPRINT_LENGTH : 0;
+        return Arrays.copyOfRange(signedData, from, from + FINGERPRINT_LENGTH);
+    }
+
+    static byte[] signedData(PublicKey sender, PublicKey receiver, float value) {
+        return ByteBuffer.allocate(SIGNED_DATA_LENGTH).put(fingerprint(sender)).put(fingerprint(receiver))
+                .putFloat(value).array();
+    }
+
+    static String transactionId(byte[] signedData, long timestamp) {
+        final ByteBuffer buffer = buffer(signedData.length + Long.BYTES);
+        buffer.put(signedData).putLong(timestamp).flip();
+        return Util.toHex(Util.digest(buffer, "MD5"));
+    }
+
+    static String outputId(PublicKey receiver, String parentTransactionId) {
+        return outputId(fingerprint(receiver), parentTransactionId);
+    }
+
+    static String outputId(byte[] receiverFingerprint, String parentTransactionId) {
+        final byte[] parentId = parentTransactionId.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer buffer = buffer(FINGERPRINT_LENGTH + Integer.BYTES + parentId.length);
+        buffer.put(receiverFingerprint).putInt(parentId.length).put(parentId).flip();
+        return Util.toHex(Util.digest(buffer, "SHA-256"));
+    }
+
+    private static ByteBuffer buffer(int length) {
+        ByteBuffer buffer = BUFFERS.get();
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+            BUFFERS.set(buffer);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private static final class FingerprintStripe {
+
+        // Weak keys, so the fingerprints of wallets that are gone get dropped again.
+        private final Map<PublicKey, byte[]> fingerprints = new WeakHashMap<>();
+
+        private synchronized byte[] get(PublicKey key) {
+            return this.fingerprints.computeIfAbsent(key, k -> Util.sha256(k.getEncoded()));
+        }
+    }
+
+}
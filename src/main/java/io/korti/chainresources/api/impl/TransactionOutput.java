@@ -29,8 +29,25 @@ public class TransactionOutput implements ITransactionOutput {
     public TransactionOutput(PublicKey receiver, float value, String parentTransactionID) {
         this.receiver = receiver;
         this.value = value;
+        this.id = TransactionEncoding.outputId(receiver, parentTransactionID);
+    }
+
+    /**
+     * Creates an output with the fingerprint of the receiver the transaction already calculated.
+     */
+    TransactionOutput(PublicKey receiver, byte[] receiverFingerprint, float value, String parentTransactionID) {
+        this.receiver = receiver;
+        this.value = value;
+        this.id = TransactionEncoding.outputId(receiverFingerprint, parentTransactionID);
+    }
 
-        this.id = Util.toSHA256(Util.keyToString(this.receiver) + parentTransactionID);
+    /**
+     * Restores an output with the ID it got on creation, for example from a {@link UTXOSnapshotStore}.
+     */
+    TransactionOutput(String id, PublicKey receiver, float value) {
+        this.id = id;
+        this.receiver = receiver;
+        this.value = value;
     }
 
     @Override
@@ -43,6 +60,11 @@ public class TransactionOutput implements ITransactionOutput {
         return value;
     }
 
+    @Override
+    public PublicKey getReceiver() {
+        return this.receiver;
+    }
+
     @Override
     public boolean isMine(PublicKey key) {
         return receiver.equals(key);
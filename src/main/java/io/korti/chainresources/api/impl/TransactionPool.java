@@ -0,0 +1,148 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.korti.chainresources.api.impl;
+
+import io.korti.chainresources.api.blockchain.IBlock;
+import io.korti.chainresources.api.blockchain.ITransaction;
+import io.korti.chainresources.api.blockchain.ITransactionInput;
+import io.korti.chainresources.api.blockchain.ITransactionPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock free transaction pool. The pending transactions are kept in a queue in the order they got submitted and every
+ * spent output ID is claimed by exactly one pending transaction. A claim gets released when its transaction leaves
+ * the pool.
+ */
+public class TransactionPool implements ITransactionPool {
+
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+    private final int capacity;
+    private final SignatureVerifier verifier;
+
+    private final Queue<ITransaction> pending = new ConcurrentLinkedQueue<>();
+    private final Map<String, ITransaction> claims = new ConcurrentHashMap<>();     // Output ID -> spending transaction
+    private final AtomicInteger size = new AtomicInteger();
+
+    public TransactionPool() {
+        this(DEFAULT_CAPACITY, SignatureVerifier.getDefault());
+    }
+
+    public TransactionPool(int capacity, SignatureVerifier verifier) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The pool needs a capacity of at least one transaction.");
+        }
+        this.capacity = capacity;
+        this.verifier = verifier;
+    }
+
+    @Override
+    public boolean submit(ITransaction transaction) {
+        return transaction != null && transaction.verifySignature() && this.enqueue(transaction);
+    }
+
+    /**
+     * Submits all transactions and verifies their signatures in parallel before.
+     * @param transactions Transactions to submit.
+     * @return The result of {@link #submit(ITransaction)} for every transaction, in the same order as the list.
+     */
+    public boolean[] submitAll(List<? extends ITransaction> transactions) {
+        final boolean[] results = this.verifier.verifyAll(transactions);
+        for (int i = 0; i < results.length; i++) {
+            results[i] = results[i] && this.enqueue(transactions.get(i));
+        }
+        return results;
+    }
+
+    private boolean enqueue(ITransaction transaction) {
+        final List<ITransactionInput> inputs = transaction.getInputs();
+        if (inputs.isEmpty()) {
+            return false;   // Nothing to spend, the transaction can't be processed.
+        }
+        if (this.size.incrementAndGet() > this.capacity) {
+            this.size.decrementAndGet();
+            return false;
+        }
+
+        for (int i = 0; i < inputs.size(); i++) {
+            final String outputId = inputs.get(i).getTransactionOutputID();
+            if (this.claims.putIfAbsent(outputId, transaction) != null) {
+                // Double spend or the same transaction twice, give back what got claimed so far.
+                for (int j = 0; j < i; j++) {
+                    this.claims.remove(inputs.get(j).getTransactionOutputID(), transaction);
+                }
+                this.size.decrementAndGet();
+                return false;
+            }
+        }
+
+        this.pending.offer(transaction);
+        return true;
+    }
+
+    @Override
+    public int fillBlock(IBlock block, int max) {
+        final List<ITransaction> batch = this.poll(max);
+        try {
+            final Map<ITransaction, Boolean> results = block.addTransactions(batch);
+            return (int) results.values().stream().filter(Boolean::booleanValue).count();
+        } finally {
+            // Processed transactions spent their outputs on the chain, the others are dropped.
+            batch.forEach(this::release);
+        }
+    }
+
+    @Override
+    public List<ITransaction> drain(int max) {
+        final List<ITransaction> batch = this.poll(max);
+        batch.forEach(this::release);
+        return batch;
+    }
+
+    private List<ITransaction> poll(int max) {
+        final List<ITransaction> batch = new ArrayList<>(Math.min(max, this.size.get()));
+        ITransaction transaction;
+        while (batch.size() < max && (transaction = this.pending.poll()) != null) {
+            this.size.decrementAndGet();
+            batch.add(transaction);
+        }
+        return batch;
+    }
+
+    private void release(ITransaction transaction) {
+        for (ITransactionInput input : transaction.getInputs()) {
+            this.claims.remove(input.getTransactionOutputID(), transaction);
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.size.get();
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+}
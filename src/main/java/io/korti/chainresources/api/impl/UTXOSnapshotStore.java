@@ -0,0 +1,267 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package io.korti.chainresources.api.impl;
+
+import io.korti.chainresources.api.blockchain.IBlock;
+import io.korti.chainresources.api.blockchain.IChainStore;
+import io.korti.chainresources.api.blockchain.ITransactionOutput;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.PublicKey;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Stores snapshots of the UTXOs at a block height, so a chain doesn't have to replay every block from the start.
+ * <p>
+ * Every snapshot is a file of its own:
+ * | magic (int) | version (byte) | height (int) | block hash (short length + UTF-8) | output count (int) |
+ * | outputs | CRC32 of everything before (int) |
+ * An output is written as | ID | key index (int) | value (float) |. A key is written once directly behind the first
+ * output that uses it, the index of a new key is the number of keys before it.
+ * <p>
+ * A snapshot is written into a temporary file that gets moved to its name when it's complete. It's only used if its
+ * checksum fits and the block at its height still has the hash it was taken at.
+ */
+public class UTXOSnapshotStore {
+
+    public static final int DEFAULT_KEEP = 2;
+
+    private static final String SNAPSHOT_PREFIX = "utxo-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final int MAGIC = 0x4D435554;    // "MCUT"
+    private static final byte VERSION = 1;
+
+    private final Path directory;
+    private final int keep; // Number of snapshots that are kept, older ones get deleted.
+
+    public UTXOSnapshotStore(Path directory) {
+        this(directory, DEFAULT_KEEP);
+    }
+
+    public UTXOSnapshotStore(Path directory, int keep) {
+        if (keep < 1) {
+            throw new IllegalArgumentException("At least one snapshot has to be kept.");
+        }
+        this.directory = directory;
+        this.keep = keep;
+    }
+
+    /**
+     * Writes a snapshot of the UTXOs and deletes the snapshots that aren't kept anymore.
+     * @param height Height of the block the UTXOs belong to.
+     * @param blockHash Hash of the block.
+     * @param utxos UTXOs after the block, they must not change while they are written.
+     */
+    public void write(int height, String blockHash, Collection<ITransactionOutput> utxos) {
+        final Path file = this.directory.resolve(fileName(height));
+        final Path temporary = this.directory.resolve(fileName(height) + ".tmp");
+
+        try {
+            Files.createDirectories(this.directory);
+            try (FileOutputStream fileOut = new FileOutputStream(temporary.toFile())) {
+                final CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fileOut),
+                        new CRC32());
+                final DataOutputStream out = new DataOutputStream(checked);
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeInt(height);
+                BlockCodec.writeString(out, blockHash);
+                out.writeInt(utxos.size());
+
+                final Map<PublicKey, Integer> keyIndices = new HashMap<>();
+                for (ITransactionOutput utxo : utxos) {
+                    BlockCodec.writeString(out, utxo.getID());
+                    final Integer index = keyIndices.get(utxo.getReceiver());
+                    if (index == null) {
+                        out.writeInt(keyIndices.size());
+                        BlockCodec.writeString(out, utxo.getReceiver().getAlgorithm());
+                        BlockCodec.writeBytes(out, utxo.getReceiver().getEncoded());
+                        keyIndices.put(utxo.getReceiver(), keyIndices.size());
+                    } else {
+                        out.writeInt(index);
+                    }
+                    out.writeFloat(utxo.getValue());
+                }
+
+                out.flush();
+                new DataOutputStream(fileOut).writeInt((int) checked.getChecksum().getValue());
+                fileOut.getFD().sync();
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // The next snapshot of the height replaces it.
+            }
+            throw new UncheckedIOException(e);
+        }
+
+        this.deleteOldSnapshots();
+    }
+
+    private void deleteOldSnapshots() {
+        final List<Path> snapshots = this.findSnapshots();
+        for (int i = this.keep; i < snapshots.size(); i++) {
+            try {
+                Files.deleteIfExists(snapshots.get(i));
+            } catch (IOException e) {
+                // Gets deleted with the next snapshot.
+            }
+        }
+    }
+
+    /**
+     * Loads the newest snapshot that is complete and fits to the blocks of the store.
+     * @param store Blocks of the chain.
+     * @return The newest valid snapshot or null if there isn't one.
+     */
+    public Snapshot loadNewest(IChainStore store) {
+        for (Path file : this.findSnapshots()) {
+            final Snapshot snapshot = read(file);
+            if (snapshot == null || snapshot.height >= store.size()) {
+                continue;
+            }
+            final IBlock block = store.get(snapshot.height);
+            if (block != null && snapshot.blockHash.equals(block.getHash())) {
+                return snapshot;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Height of the oldest kept snapshot or -1 if there isn't one.
+     */
+    public int getOldestHeight() {
+        final List<Path> snapshots = this.findSnapshots();
+        if (snapshots.isEmpty()) {
+            return -1;
+        }
+        final String name = snapshots.get(snapshots.size() - 1).getFileName().toString();
+        return Integer.parseInt(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+
+    /**
+     * @return The snapshot files, the newest first.
+     */
+    List<Path> findSnapshots() {
+        if (!Files.isDirectory(this.directory)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> files = Files.list(this.directory)) {
+            return files.filter(file -> {
+                final String name = file.getFileName().toString();
+                return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+            }).sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Snapshot read(Path file) {
+        final ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        } catch (IOException e) {
+            return null;
+        }
+        if (buffer.remaining() < Integer.BYTES * 2) {
+            return null;
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.limit() - Integer.BYTES);
+        if ((int) crc.getValue() != buffer.getInt(buffer.limit() - Integer.BYTES)) {
+            return null;    // Broken or not completely written.
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+                return null;
+            }
+            final int height = buffer.getInt();
+            final String blockHash = BlockCodec.readString(buffer);
+            final int count = buffer.getInt();
+
+            final List<PublicKey> keys = new ArrayList<>();
+            final List<ITransactionOutput> utxos = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final String id = BlockCodec.readString(buffer);
+                final int index = buffer.getInt();
+                if (index == keys.size()) {
+                    keys.add(BlockCodec.toPublicKey(BlockCodec.readString(buffer), BlockCodec.readBytes(buffer)));
+                }
+                utxos.add(new TransactionOutput(id, keys.get(index), buffer.getFloat()));
+            }
+            return new Snapshot(height, blockHash, utxos);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private static String fileName(int height) {
+        return String.format("%s%010d%s", SNAPSHOT_PREFIX, height, SNAPSHOT_SUFFIX);
+    }
+
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * UTXOs of the chain after the block at a height.
+     */
+    public static final class Snapshot {
+
+        private final int height;
+        private final String blockHash;
+        private final List<ITransactionOutput> utxos;
+
+        private Snapshot(int height, String blockHash, List<ITransactionOutput> utxos) {
+            this.height = height;
+            this.blockHash = blockHash;
+            this.utxos = Collections.unmodifiableList(utxos);
+        }
+
+        public int getHeight() {
+            return this.height;
+        }
+
+        public String getBlockHash() {
+            return this.blockHash;
+        }
+
+        public List<ITransactionOutput> getUTXOs() {
+            return this.utxos;
+        }
+    }
+
+}
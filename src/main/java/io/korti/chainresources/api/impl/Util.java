@@ -18,14 +18,22 @@ package io.korti.chainresources.api.impl;
 
 import io.korti.chainresources.api.blockchain.ITransaction;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
-import java.util.ArrayList;
-import java.util.Base64;
-import java.util.List;
+import java.util.*;
 
 public final class Util {
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // MessageDigest.getInstance is expensive and the instances are not thread safe, so every thread keeps its own.
+    private static final ThreadLocal<Map<String, MessageDigest>> DIGESTS = ThreadLocal.withInitial(HashMap::new);
+    // Same for Signature, initSign and initVerify reset the state of a reused instance.
+    private static final ThreadLocal<Map<String, Signature>> SIGNATURES = ThreadLocal.withInitial(HashMap::new);
+
+    private static final SignatureCache SIGNATURE_CACHE = new SignatureCache(1 << 16);
+
     public static String toMD5(String input) {
         return toHash(input, "MD5");
     }
@@ -35,44 +43,119 @@ public final class Util {
     }
 
     public static String toHash(String input, String algorithm) {
+        return toHex(digest(input.getBytes(StandardCharsets.UTF_8), algorithm));
+    }
+
+    public static byte[] md5(byte[] input) {
+        return digest(input, "MD5");
+    }
+
+    public static byte[] sha256(byte[] input) {
+        return digest(input, "SHA-256");
+    }
+
+    public static byte[] sha256(byte[] first, byte[] second) {
+        MessageDigest digest = getDigest("SHA-256");
+        digest.update(first);
+        digest.update(second);
+        return digest.digest();
+    }
+
+    public static byte[] digest(byte[] input, String algorithm) {
+        return getDigest(algorithm).digest(input);
+    }
+
+    public static byte[] digest(ByteBuffer input, String algorithm) {
+        MessageDigest digest = getDigest(algorithm);
+        digest.update(input);
+        return digest.digest();
+    }
+
+    /**
+     * Returns the digest of the current thread for the algorithm. The digest is reset and must not be shared with
+     * other threads.
+     */
+    public static MessageDigest getDigest(String algorithm) {
+        MessageDigest digest = DIGESTS.get().computeIfAbsent(algorithm, Util::newDigest);
+        digest.reset();
+        return digest;
+    }
+
+    /**
+     * Copies the digest together with everything it absorbed so far.
+     */
+    public static MessageDigest cloneDigest(MessageDigest digest) {
         try {
-            MessageDigest digest = MessageDigest.getInstance(algorithm);
-            byte[] hash = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder();
-            for (int i = 0; i < hash.length; i++) {
-                String hex = Integer.toHexString(0xFF & hash[i]);
-                if (hex.length() == 1) {
-                    hexString.append("0");
-                }
-                hexString.append(hex);
-            }
-            return hexString.toString();
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public static String getMerkelRoot(List<ITransaction> transactions) {
-        int count = transactions.size();
-        List<String> prevTreeLayer = new ArrayList<>(count);
+    public static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
 
-        for (ITransaction transaction : transactions) {
-            prevTreeLayer.add(transaction.getId());
+    /**
+     * Counts the 0 bits at the start of the hash.
+     */
+    public static int leadingZeroBits(byte[] hash) {
+        for (int i = 0; i < hash.length; i++) {
+            if (hash[i] != 0) {
+                return i * 8 + Integer.numberOfLeadingZeros(hash[i] & 0xFF) - 24;
+            }
         }
+        return hash.length * 8;
+    }
 
-        List<String> treeLayer = prevTreeLayer;
-        while (count > 1) {
-            treeLayer = new ArrayList<>(prevTreeLayer.size() - 1);
+    /**
+     * Checks if the hash starts with at least the given number of 0 bits. Stops at the first byte that is not 0.
+     */
+    public static boolean hasLeadingZeroBits(byte[] hash, int bits) {
+        if (bits > hash.length * 8) {
+            return false;
+        }
 
-            for (int i = 1; i < prevTreeLayer.size(); i++) {
-                treeLayer.add(toSHA256(prevTreeLayer.get(i - 1) + prevTreeLayer.get(i)));
+        final int fullBytes = bits >>> 3;
+        for (int i = 0; i < fullBytes; i++) {
+            if (hash[i] != 0) {
+                return false;
             }
+        }
+
+        final int restBits = bits & 7;
+        return restBits == 0 || ((hash[fullBytes] & 0xFF) >>> (8 - restBits)) == 0;
+    }
+
+    public static String getMerkelRoot(List<ITransaction> transactions) {
+        byte[] root = getMerkelRootBytes(transactions);
+        return (root == null) ? "" : toHex(root);
+    }
 
-            count = treeLayer.size();
-            prevTreeLayer = treeLayer;
+    public static byte[] getMerkelRootBytes(List<ITransaction> transactions) {
+        List<byte[]> leaves = new ArrayList<>(transactions.size());
+        for (ITransaction transaction : transactions) {
+            leaves.add(toMerkelLeaf(transaction));
         }
+        return new MerkelTree(leaves).getRoot();
+    }
 
-        return (treeLayer.size() == 1) ? treeLayer.get(0) : "";
+    public static byte[] toMerkelLeaf(ITransaction transaction) {
+        String id = transaction.getId();
+        return sha256((id == null) ? new byte[0] : id.getBytes(StandardCharsets.UTF_8));
     }
 
     public static String keyToString(Key key) {
@@ -83,11 +166,19 @@ public final class Util {
         return applySignature(key, input, "SHA256withRSA");
     }
 
+    public static byte[] applySHA256RSASig(PrivateKey key, byte[] input) {
+        return applySignature(key, input, "SHA256withRSA");
+    }
+
     public static byte[] applySignature(PrivateKey key, String input, String algorithm) {
+        return applySignature(key, input.getBytes(), algorithm);
+    }
+
+    public static byte[] applySignature(PrivateKey key, byte[] input, String algorithm) {
         try {
-            Signature sig = Signature.getInstance(algorithm);
+            Signature sig = getSignature(algorithm);
             sig.initSign(key);
-            sig.update(input.getBytes());
+            sig.update(input);
             return sig.sign();
         } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
             throw new RuntimeException(e);
@@ -98,14 +189,54 @@ public final class Util {
         return verifySignature(key, input, signature, "SHA256withRSA");
     }
 
+    public static boolean verifySHA256RSASig(PublicKey key, byte[] input, byte[] signature) {
+        return verifySignature(key, input, signature, "SHA256withRSA");
+    }
+
     public static boolean verifySignature(PublicKey key, String input, byte[] signature, String algorithm) {
+        return verifySignature(key, input.getBytes(), signature, algorithm);
+    }
+
+    public static boolean verifySignature(PublicKey key, byte[] data, byte[] signature, String algorithm) {
+        if (SIGNATURE_CACHE.contains(algorithm, key, data, signature)) {
+            return true;
+        }
+
+        final long start = System.nanoTime();
         try {
-            Signature sig = Signature.getInstance(algorithm);
+            Signature sig = getSignature(algorithm);
             sig.initVerify(key);
-            sig.update(input.getBytes());
-            return sig.verify(signature);
-        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            sig.update(data);
+            final boolean valid = sig.verify(signature);
+            Metrics.Latency.SIGNATURE_VERIFY.recordSince(start);
+            if (valid) {
+                SIGNATURE_CACHE.add(algorithm, key, data, signature);
+            }
+            return valid;
+        } catch (SignatureException e) {
+            return false;   // The signature isn't even encoded right for the algorithm, like an empty EC signature.
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Returns the cache of verified signatures that {@link #verifySignature(PublicKey, byte[], byte[], String)} uses.
+     */
+    public static SignatureCache getSignatureCache() {
+        return SIGNATURE_CACHE;
+    }
+
+    /**
+     * Returns the signature instance of the current thread for the algorithm. It has to be initialised before use.
+     */
+    static Signature getSignature(String algorithm) throws NoSuchAlgorithmException {
+        final Map<String, Signature> signatures = SIGNATURES.get();
+        Signature signature = signatures.get(algorithm);
+        if (signature == null) {
+            signature = Signature.getInstance(algorithm);
+            signatures.put(algorithm, signature);
+        }
+        return signature;
+    }
 }
@@ -20,32 +20,28 @@ import io.korti.chainresources.api.blockchain.*;
 
 import java.security.*;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 public class Wallet implements IWallet {
 
     private final IBlockchain blockchain;
-    private final Map<String, ITransactionOutput> UTXOs = new HashMap<>();
 
-    private KeyPair keyPair;
+    private final KeyPair keyPair;
 
     public Wallet(IBlockchain blockchain) {
-        this.blockchain = blockchain;
-        this.keyPair = generateKeyPair();
+        this(blockchain, SignatureScheme.RSA.generateKeyPair());
     }
 
-    private KeyPair generateKeyPair() {
-        try {
-            KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
-            SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
-            keyGen.initialize(2048, random);
-            return keyGen.generateKeyPair();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
+    /**
+     * Creates a wallet with a key pair from the pool, so the wallet doesn't have to wait for the key generation.
+     */
+    public Wallet(IBlockchain blockchain, KeyPairPool keyPairPool) {
+        this(blockchain, keyPairPool.take());
+    }
+
+    public Wallet(IBlockchain blockchain, KeyPair keyPair) {
+        this.blockchain = blockchain;
+        this.keyPair = keyPair;
     }
 
     @Override
@@ -60,26 +56,20 @@ public class Wallet implements IWallet {
 
     @Override
     public float getBalance() {
-        final List<ITransactionOutput> outputs = blockchain.getUTXOs().values().stream()
-                .filter(UTXO -> UTXO.isMine(getPublicKey())).collect(Collectors.toList());
-        float total = 0;
-        for (ITransactionOutput output : outputs) {
-            UTXOs.put(output.getID(), output);
-            total += output.getValue();
-        }
-        return total;
+        return blockchain.getBalance(getPublicKey());
     }
 
     @Override
     public ITransaction sendFunds(PublicKey receiver, float value) {
         if (getBalance() < value) {
+            Metrics.Counter.TRANSACTIONS_NOT_ENOUGH_FUNDS.increment();
             return null;    // Not enough funds to send transaction. Transaction discarded.
         }
 
         List<ITransactionInput> inputs = new ArrayList<>();
 
         float total = 0;
-        for (ITransactionOutput output : UTXOs.values()) {
+        for (ITransactionOutput output : blockchain.getUTXOs(getPublicKey()).values()) {
             total += output.getValue();
             inputs.add(new TransactionInput(output.getID()));
             if(total > value) break;
@@ -88,7 +78,7 @@ public class Wallet implements IWallet {
         Transaction newTransaction = new Transaction(this.blockchain, getPublicKey(), receiver, value, inputs);
         newTransaction.generateSignature(getPrivateKey());
 
-        inputs.forEach(input -> UTXOs.remove(input.getTransactionOutputID()));
+        Metrics.Counter.TRANSACTIONS_SENT.increment();
 
         return newTransaction;
     }
@@ -0,0 +1,478 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package io.korti.chainresources.api.impl;
+
+import io.korti.chainresources.api.blockchain.ITransactionOutput;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.PublicKey;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Log of the UTXO changes, so the UTXOs can be recovered after a crash. Every change of the main chain, the added
+ * outputs and the spent IDs, is one record. A record is only replayed if it was written completely.
+ * <p>
+ * Records are appended to a buffer in memory and a flusher thread writes and forces them to the file. All records
+ * that got appended while the last force was running are forced together, so writers that wait for their record
+ * share one fsync. How long a writer waits depends on the {@link Durability}.
+ * <p>
+ * The log is split into files that are named by the height of the first block they belong to, see {@link #roll(int)}.
+ * A record is written as | length (int) | CRC32 of the rest (int) | added count (int) | added outputs |
+ * spent count (int) | spent IDs |, an output as | ID | key algorithm | encoded key | value (float) |.
+ */
+public class WriteAheadLog implements Closeable {
+
+    public enum Durability {
+        /** Every UTXO change is forced before it returns, also the changes outside of a block. */
+        PER_TRANSACTION,
+        /** The UTXO changes are forced before adding a block returns. */
+        PER_BLOCK,
+        /** The UTXO changes are forced in a fixed interval, a crash loses at most the last interval. */
+        TIMED
+    }
+
+    public static final long DEFAULT_FLUSH_MILLIS = 100;
+
+    private static final String LOG_PREFIX = "wal-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES * 2;
+
+    private final Path directory;
+    private final Durability durability;
+    private final long flushMillis;
+    private final Thread flusher;
+
+    private final Object writeLock = new Object();  // Held while writing the file, always taken before this.
+    private FileChannel channel;
+
+    // Guarded by this.
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream(4096);
+    private long appended = 0;  // Sequence number of the last appended record.
+    private long durable = 0;   // Sequence number of the last forced record.
+    private long requested = 0; // Highest sequence number a writer waits for.
+    private IOException failure;
+    private boolean closed = false;
+
+    public WriteAheadLog(Path directory, Durability durability) {
+        this(directory, durability, DEFAULT_FLUSH_MILLIS);
+    }
+
+    public WriteAheadLog(Path directory, Durability durability, long flushMillis) {
+        this.directory = directory;
+        this.durability = durability;
+        this.flushMillis = flushMillis;
+
+        try {
+            Files.createDirectories(directory);
+            final List<Path> files = this.findFiles();
+            if (!files.isEmpty()) {
+                this.openForAppend(files.get(files.size() - 1));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        this.flusher = new Thread(this::runFlusher, "MineCoin Log Flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    private void openForAppend(Path file) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+        while (content.hasRemaining() && channel.read(content, content.position()) >= 0);
+        content.flip();
+
+        final int end = scanRecords(content, null);
+        channel.truncate(end);  // A record that wasn't written completely gets dropped.
+        channel.position(end);
+        this.channel = channel;
+    }
+
+    /**
+     * Appends the change of the UTXOs.
+     * @param added Outputs that got added.
+     * @param removedIds IDs of the outputs that got spent.
+     * @return Sequence number of the record, to wait for it with {@link #awaitDurable(long)}.
+     */
+    public long logUpdate(Collection<ITransactionOutput> added, Collection<String> removedIds) {
+        return this.append(encodeUpdate(added, removedIds));
+    }
+
+    private synchronized long append(byte[] record) {
+        if (this.closed) {
+            throw new IllegalStateException("The log is closed.");
+        }
+        if (this.channel == null) {
+            throw new IllegalStateException("The log has no file yet, it has to be rolled first.");
+        }
+        if (this.failure != null) {
+            throw new UncheckedIOException("The log stopped after a failed write.",
+                    this.failure);
+        }
+        this.pending.write(record, 0, record.length);
+        Metrics.Counter.LOG_RECORDS.increment();
+        return ++this.appended;
+    }
+
+    /**
+     * Waits until the record with the sequence number and every record before it is forced to the file.
+     */
+    public synchronized void awaitDurable(long sequence) {
+        if (sequence > this.requested) {
+            this.requested = sequence;
+            this.notifyAll();   // Wakes the flusher.
+        }
+        while (this.durable < sequence) {
+            if (this.failure != null) {
+                throw new UncheckedIOException(this.failure);
+            }
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return True if the record with the sequence number is forced to the file.
+     */
+    public synchronized boolean isDurable(long sequence) {
+        return this.durable >= sequence;
+    }
+
+    /**
+     * Waits until every appended record is forced to the file.
+     */
+    public void sync() {
+        final long sequence;
+        synchronized (this) {
+            sequence = this.appended;
+        }
+        this.awaitDurable(sequence);
+    }
+
+    private void runFlusher() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (this.durability == Durability.TIMED) {
+                        this.wait(this.flushMillis);
+                    } else {
+                        while (!this.closed && this.requested <= this.durable) {
+                            this.wait();
+                        }
+                    }
+                    if (this.closed) {
+                        return; // Closing flushes the rest.
+                    }
+                }
+                this.flush();
+            }
+        } catch (InterruptedException e) {
+            // Closed.
+        } catch (UncheckedIOException e) {
+            // The waiting writers got the failure, nothing can be forced anymore.
+        }
+    }
+
+    /**
+     * Writes and forces the pending records. After a failed write the log stops, the records behind a broken one
+     * would never be replayed.
+     * @throws UncheckedIOException If this or an earlier write failed.
+     */
+    private void flush() {
+        synchronized (this.writeLock) {
+            final ByteArrayOutputStream batch;
+            final long sequence;
+            synchronized (this) {
+                if (this.failure != null) {
+                    throw new UncheckedIOException(this.failure);
+                }
+                if (this.appended == this.durable || this.channel == null) {
+                    return;
+                }
+                batch = this.pending;
+                sequence = this.appended;
+                this.pending = new ByteArrayOutputStream(Math.max(4096, batch.size()));
+            }
+
+            final long start = System.nanoTime();
+            long position = -1;
+            try {
+                position = this.channel.position();
+                final ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+                while (buffer.hasRemaining()) {
+                    this.channel.write(buffer);
+                }
+                this.channel.force(false);
+            } catch (IOException e) {
+                this.dropPartialWrite(position);
+                synchronized (this) {
+                    batch.write(this.pending.toByteArray(), 0, this.pending.size());
+                    this.pending = batch;   // Keeps the records that didn't get forced in order.
+                    this.failure = e;
+                    this.notifyAll();
+                }
+                throw new UncheckedIOException(e);
+            }
+            Metrics.Latency.LOG_FLUSH.recordSince(start);
+            Metrics.Counter.LOG_FLUSHES.increment();
+
+            synchronized (this) {
+                this.durable = sequence;
+                this.notifyAll();
+            }
+        }
+    }
+
+    private void dropPartialWrite(long position) {
+        if (position < 0) {
+            return;
+        }
+        try {
+            this.channel.truncate(position);
+        } catch (IOException e) {
+            // Opening the log again drops the torn record.
+        }
+    }
+
+    /**
+     * Forces all appended records and continues the log in a new file. The new file holds the UTXO changes from the
+     * block at the height on, so it starts where a snapshot of the UTXOs before that block ends.
+     * @param height Height of the next block, 0 for a log from the start.
+     */
+    public void roll(int height) {
+        synchronized (this.writeLock) {
+            this.flush();
+            try {
+                if (this.channel != null) {
+                    this.channel.close();
+                }
+                this.channel = FileChannel.open(this.directory.resolve(fileName(height)), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * @param height Height of the block the file starts with.
+     * @return True if there is a log file that starts with the height.
+     */
+    public boolean hasFile(int height) {
+        return Files.exists(this.directory.resolve(fileName(height)));
+    }
+
+    /**
+     * @return True if the log has a file to append to.
+     */
+    public synchronized boolean isOpen() {
+        return this.channel != null;
+    }
+
+    /**
+     * Replays the records of the files from the one that starts with the height on in the order they got appended.
+     * @param height Height the first file starts with.
+     * @param consumer Gets the added outputs and the spent IDs of every record.
+     */
+    public void replay(int height, BiConsumer<List<ITransactionOutput>, List<String>> consumer) {
+        final Map<ByteBuffer, PublicKey> keys = new HashMap<>();    // The same wallets show up in many records.
+        for (Path file : this.findFiles()) {
+            if (heightOf(file) < height) {
+                continue;
+            }
+            try {
+                scanRecords(ByteBuffer.wrap(Files.readAllBytes(file)),
+                        record -> decodeUpdate(record, keys, consumer));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Deletes the files that start before the height, they aren't needed to recover the UTXOs anymore.
+     */
+    public void deleteBefore(int height) {
+        synchronized (this.writeLock) {
+            final List<Path> files = this.findFiles();
+            for (int i = 0; i < files.size() - 1; i++) {    // The file that gets appended to is kept.
+                if (heightOf(files.get(i)) < height) {
+                    try {
+                        Files.deleteIfExists(files.get(i));
+                    } catch (IOException e) {
+                        // Gets deleted the next time.
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.notifyAll();
+        }
+        this.flusher.interrupt();
+        try {
+            this.flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this.writeLock) {
+            try {
+                this.flush();
+            } finally {
+                if (this.channel != null) {
+                    try {
+                        this.channel.close();
+                    } catch (IOException e) {
+                        // Everything got forced already or the flush failed.
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the complete records of the buffer.
+     * @return Position behind the last complete record.
+     */
+    private static int scanRecords(ByteBuffer buffer, Consumer<ByteBuffer> consumer) {
+        int position = 0;
+        while (position + RECORD_HEADER_SIZE <= buffer.limit()) {
+            final int length = buffer.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length > buffer.limit()) {
+                break;
+            }
+            final ByteBuffer record = buffer.duplicate();
+            record.limit(position + RECORD_HEADER_SIZE + length).position(position + RECORD_HEADER_SIZE);
+            final CRC32 crc = new CRC32();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+                break;
+            }
+            if (consumer != null) {
+                consumer.accept(record.slice());
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private static byte[] encodeUpdate(Collection<ITransactionOutput> added, Collection<String> removedIds) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(RECORD_HEADER_SIZE + 64 + added.size() * 400);
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(0);   // Room for the header.
+            out.writeInt(added.size());
+            for (ITransactionOutput output : added) {
+                BlockCodec.writeString(out, output.getID());
+                BlockCodec.writeString(out, output.getReceiver().getAlgorithm());
+                BlockCodec.writeBytes(out, output.getReceiver().getEncoded());
+                out.writeFloat(output.getValue());
+            }
+            out.writeInt(removedIds.size());
+            for (String id : removedIds) {
+                BlockCodec.writeString(out, id);
+            }
+            out.flush();
+
+            final ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+            final CRC32 crc = new CRC32();
+            crc.update(record.array(), RECORD_HEADER_SIZE, record.capacity() - RECORD_HEADER_SIZE);
+            record.putInt(0, record.capacity() - RECORD_HEADER_SIZE);
+            record.putInt(Integer.BYTES, (int) crc.getValue());
+            return record.array();
+        } catch (IOException e) {
+            throw new RuntimeException(e);  // Can't happen, everything gets written into memory.
+        }
+    }
+
+    private static void decodeUpdate(ByteBuffer record, Map<ByteBuffer, PublicKey> keys,
+                                     BiConsumer<List<ITransactionOutput>, List<String>> consumer) {
+        try {
+            final int addedCount = record.getInt();
+            final List<ITransactionOutput> added = new ArrayList<>(addedCount);
+            for (int i = 0; i < addedCount; i++) {
+                final String id = BlockCodec.readString(record);
+                final String algorithm = BlockCodec.readString(record);
+                final PublicKey receiver = keys.computeIfAbsent(ByteBuffer.wrap(BlockCodec.readBytes(record)),
+                        encoded -> BlockCodec.toPublicKey(algorithm, encoded.array()));
+                added.add(new TransactionOutput(id, receiver, record.getFloat()));
+            }
+            final int removedCount = record.getInt();
+            final List<String> removed = new ArrayList<>(removedCount);
+            for (int i = 0; i < removedCount; i++) {
+                removed.add(BlockCodec.readString(record));
+            }
+            consumer.accept(added, removed);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalStateException("Broken log record with a valid checksum.", e);
+        }
+    }
+
+    private List<Path> findFiles() {
+        try (Stream<Path> files = Files.list(this.directory)) {
+            return files.filter(file -> {
+                final String name = file.getFileName().toString();
+                return name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX);
+            }).sorted(Comparator.comparingInt(WriteAheadLog::heightOf)).collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String fileName(int height) {
+        return String.format("%s%d%s", LOG_PREFIX, height, LOG_SUFFIX);
+    }
+
+    private static int heightOf(Path file) {
+        final String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length()));
+    }
+
+    public Durability getDurability() {
+        return this.durability;
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ *    Copyright 2020 Korti
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.korti.chainresources.common;
+
+import io.korti.chainresources.ChainResources;
+import io.korti.chainresources.api.blockchain.IBlockchain;
+import io.korti.chainresources.api.blockchain.ITransactionPool;
+import io.korti.chainresources.api.impl.KeyPairPool;
+import io.korti.chainresources.api.impl.Metrics;
+import io.korti.chainresources.api.impl.MiningScheduler;
+import io.korti.chainresources.api.impl.PersistentMineCoinBlockchain;
+import io.korti.chainresources.api.impl.SignatureScheme;
+import io.korti.chainresources.api.impl.TransactionPool;
+import net.minecraft.world.storage.FolderName;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.event.server.FMLServerStartedEvent;
+import net.minecraftforge.fml.event.server.FMLServerStoppingEvent;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the MineCoin chain together with the server. The chain and the pool are created when the server started and
+ * the mining scheduler is ticked at the end of every server tick, so blocks are added on the server thread. The chain
+ * is kept in the save directory of the world and closed when the server stops.
+ */
+public class MiningHandler {
+
+    private static final long TARGET_BLOCK_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final int RETARGET_WINDOW = 10;
+    private static final int KEY_PAIR_POOL_SIZE = 32;    // Enough for a lot of players joining at once.
+    private static final FolderName CHAIN_FOLDER = new FolderName("minecoin");
+
+    private PersistentMineCoinBlockchain blockchain;
+    private ITransactionPool pool;
+    private MiningScheduler scheduler;
+    private KeyPairPool keyPairPool;
+
+    @SubscribeEvent
+    public void onServerStarted(final FMLServerStartedEvent event) {
+        final Path directory = event.getServer().func_240776_a_(CHAIN_FOLDER);
+        final PersistentMineCoinBlockchain blockchain = new PersistentMineCoinBlockchain(directory);
+        if (!blockchain.revalidate()) {
+            ChainResources.LOG.warn("Stored MineCoin chain in {} has invalid blocks.", directory);
+        }
+        blockchain.setRetargeting(TARGET_BLOCK_MILLIS, RETARGET_WINDOW);    // Same block rate on every machine.
+        final TransactionPool pool = new TransactionPool();
+        this.blockchain = blockchain;
+        this.pool = pool;
+        this.keyPairPool = new KeyPairPool(SignatureScheme.RSA, KEY_PAIR_POOL_SIZE);
+        Metrics.registerGauge("UTXOs", () -> blockchain.getUTXOs().size());
+        Metrics.registerGauge("Chain height", blockchain::height);
+        Metrics.registerGauge("Pending transactions", pool::size);
+        this.scheduler = new MiningScheduler(this.blockchain, this.pool);
+        this.scheduler.start();
+        ChainResources.LOG.info("Started MineCoin mining.");
+    }
+
+    @SubscribeEvent
+    public void onServerTick(final TickEvent.ServerTickEvent event) {
+        if (event.phase == TickEvent.Phase.END && this.scheduler != null) {
+            this.scheduler.tick();
+        }
+    }
+
+    @SubscribeEvent
+    public void onServerStopping(final FMLServerStoppingEvent event) {
+        if (this.scheduler == null) {
+            return;
+        }
+        if (!this.scheduler.shutdown()) {
+            ChainResources.LOG.warn("MineCoin mining thread didn't stop in time.");
+        }
+        ChainResources.LOG.info("Stopped MineCoin mining after {} blocks.", this.scheduler.getAddedBlocks());
+        this.keyPairPool.shutdown();
+        this.blockchain.close();    // Forces the log, so the chain is restored on the next start.
+        ChainResources.dumpMetrics();
+        this.scheduler = null;
+    }
+
+    public IBlockchain getBlockchain() {
+        return this.blockchain;
+    }
+
+    public ITransactionPool getPool() {
+        return this.pool;
+    }
+
+    /**
+     * New wallets should take their key pair from this pool, so they don't generate it on the server thread.
+     */
+    public KeyPairPool getKeyPairPool() {
+        return this.keyPairPool;
+    }
+
+}
@@ -0,0 +1,65 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.api.blockchain.IBlock;
+import io.korti.chainresources.api.blockchain.ITransaction;
+import io.korti.chainresources.api.impl.BlockCodec;
+import io.korti.chainresources.api.impl.MineCoinBlock;
+import io.korti.chainresources.api.impl.MineCoinBlockchain;
+import io.korti.chainresources.api.impl.TransactionOutput;
+import io.korti.chainresources.api.impl.Wallet;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class BlockCodecTest {
+
+    @Test
+    @DisplayName("Encode and decode a block with a transaction.")
+    public void encodeAndDecodeBlock() {
+        final MineCoinBlockchain blockchain = new MineCoinBlockchain();
+        final Wallet sender = new Wallet(blockchain);
+        final Wallet receiver = new Wallet(blockchain);
+        blockchain.addUTXO(new TransactionOutput(sender.getPublicKey(), 10f, "Genesis"));
+
+        final MineCoinBlock block = new MineCoinBlock("A");
+        final ITransaction transaction = sender.sendFunds(receiver.getPublicKey(), 4f);
+        block.addTransaction(transaction);
+        while (!block.mineBlock(2));
+
+        final BlockCodec codec = new BlockCodec(blockchain);
+        final MineCoinBlock decoded = codec.decode(ByteBuffer.wrap(codec.encode(block)));
+
+        assertEquals(block.getHash(), decoded.getHash(), "The decoded block should have the same hash.");
+        assertEquals(block.getPreviousHash(), decoded.getPreviousHash(), "The previous hash should be the same.");
+        assertEquals(1, decoded.getTransactions().size(), "The decoded block should have one transaction.");
+
+        final ITransaction decodedTransaction = decoded.getTransactions().get(0);
+        assertEquals(transaction.getId(), decodedTransaction.getId(), "The transaction ID should be the same.");
+        assertTrue(decodedTransaction.verifySignature(), "The decoded signature should still be valid.");
+        assertEquals(transaction.getOutputs().get(0).getID(), decodedTransaction.getOutputs().get(0).getID(),
+                "The output IDs should be the same.");
+        assertEquals(transaction.getInputs().get(0).getTransactionOutputID(),
+                decodedTransaction.getInputs().get(0).getTransactionOutputID(), "The input IDs should be the same.");
+    }
+
+    @Test
+    @DisplayName("Only MineCoinBlocks can be encoded.")
+    public void encodeOtherBlock() {
+        final BlockCodec codec = new BlockCodec(null);
+
+        assertThrows(IllegalArgumentException.class, () -> codec.encode(mock(IBlock.class)));
+    }
+
+    @Test
+    @DisplayName("A block without a previous hash is rejected.")
+    public void encodeBlockWithoutPreviousHash() {
+        final BlockCodec codec = new BlockCodec(null);
+
+        assertThrows(IllegalArgumentException.class, () -> codec.encode(mock(MineCoinBlock.class)));
+    }
+
+}
@@ -0,0 +1,69 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.api.impl.KeyPairPool;
+import io.korti.chainresources.api.impl.SignatureScheme;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeyPairPoolTest {
+
+    @Test
+    @DisplayName("Pool needs a capacity of at least one.")
+    public void poolNeedsCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new KeyPairPool(SignatureScheme.EC, 0));
+    }
+
+    @Test
+    @DisplayName("Pool fills up in the background.")
+    public void poolFillsUp() throws InterruptedException {
+        final KeyPairPool pool = new KeyPairPool(SignatureScheme.EC, 4);
+        try {
+            final long deadline = System.currentTimeMillis() + 10_000;
+            while (pool.available() < 4 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(4, pool.available(), "The pool should be filled up to its capacity.");
+            pool.take();
+            assertEquals(0, pool.getMisses(), "The key pair should come from the pool.");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Pool hands out every key pair only once.")
+    public void keyPairsAreUnique() {
+        final KeyPairPool pool = new KeyPairPool(SignatureScheme.EC, 2);
+        try {
+            final Set<KeyPair> keyPairs = new HashSet<>();
+            for (int i = 0; i < 10; i++) {
+                keyPairs.add(pool.take());
+            }
+
+            assertEquals(10, keyPairs.size(), "Every key pair should only be handed out once.");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Empty pool generates the key pair on the calling thread.")
+    public void emptyPoolGeneratesKeyPair() {
+        final KeyPairPool pool = new KeyPairPool(SignatureScheme.EC, 1);
+        pool.shutdown();
+
+        final KeyPair keyPair = pool.take();
+
+        assertNotNull(keyPair, "The pool should generate a key pair.");
+        assertEquals("EC", keyPair.getPublic().getAlgorithm(), "The key pair should be of the scheme of the pool.");
+        assertEquals(1, pool.getMisses(), "Taking from the empty pool should be counted.");
+    }
+
+}
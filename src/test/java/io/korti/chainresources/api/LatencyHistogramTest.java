@@ -0,0 +1,47 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.api.impl.LatencyHistogram;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("Empty histogram.")
+    public void emptyHistogram() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount(), "Nothing got recorded.");
+        assertEquals(0, histogram.getPercentileNanos(99), "The percentile of an empty histogram should be 0.");
+        assertEquals(0, histogram.getMeanNanos(), "The mean of an empty histogram should be 0.");
+    }
+
+    @Test
+    @DisplayName("Percentiles are the upper bound of their bucket.")
+    public void percentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100);
+        }
+        histogram.record(1_000_000);
+
+        assertEquals(100, histogram.getCount(), "There should be 100 values.");
+        assertEquals(127, histogram.getPercentileNanos(50), "100ns is in the bucket up to 127ns.");
+        assertEquals(127, histogram.getPercentileNanos(99), "99 of 100 values are 100ns.");
+        assertEquals((1 << 20) - 1, histogram.getPercentileNanos(100), "1ms is in the bucket up to 2^20 - 1ns.");
+        assertEquals(10_099, histogram.getMeanNanos(), 0.001, "The mean is not right.");
+    }
+
+    @Test
+    @DisplayName("Very large values go into the last bucket.")
+    public void largeValues() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(Long.MAX_VALUE, histogram.getPercentileNanos(50), "The last bucket ends at Long.MAX_VALUE.");
+    }
+
+}
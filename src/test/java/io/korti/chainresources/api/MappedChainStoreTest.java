@@ -0,0 +1,157 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.api.blockchain.IBlock;
+import io.korti.chainresources.api.impl.MappedChainStore;
+import io.korti.chainresources.api.impl.MineCoinBlock;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedChainStoreTest {
+
+    private static List<MineCoinBlock> mineBlocks(int count) {
+        final List<MineCoinBlock> blocks = new ArrayList<>(count);
+        String prevHash = "0";
+        for (int i = 0; i < count; i++) {
+            final MineCoinBlock block = new MineCoinBlock(prevHash);
+            while (!block.mineBlock(1));
+            blocks.add(block);
+            prevHash = block.getHash();
+        }
+        return blocks;
+    }
+
+    @Test
+    @DisplayName("Blocks can be read after reopening the store.")
+    public void readBlocksAfterReopening(@TempDir Path directory) {
+        final List<MineCoinBlock> blocks = mineBlocks(10);
+
+        try (MappedChainStore store = new MappedChainStore(directory, null)) {
+            blocks.forEach(store::append);
+        }
+
+        try (MappedChainStore store = new MappedChainStore(directory, null)) {
+            assertEquals(10, store.size(), "The reopened store should contain all blocks.");
+            for (int i = 0; i < blocks.size(); i++) {
+                assertEquals(blocks.get(i).getHash(), store.get(i).getHash(), "The block at height " + i + " is not right.");
+            }
+            assertEquals(4, store.getHeight(blocks.get(4).getHash()), "The block should be found by its hash.");
+            assertEquals(blocks.get(9).getHash(), store.last().getHash(), "The last block is not right.");
+        }
+    }
+
+    @Test
+    @DisplayName("A new segment gets started if a block doesn't fit into the last one.")
+    public void blocksGetSplitIntoSegments(@TempDir Path directory) throws IOException {
+        final List<MineCoinBlock> blocks = mineBlocks(20);
+
+        try (MappedChainStore store = new MappedChainStore(directory, null, 512)) {
+            blocks.forEach(store::append);
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.collect(Collectors.toList()).size() > 1, "The blocks should be split over several segments.");
+        }
+        try (MappedChainStore store = new MappedChainStore(directory, null, 512)) {
+            assertEquals(20, store.size(), "The reopened store should contain all blocks.");
+            assertEquals(blocks.get(15).getHash(), store.get(15).getHash(), "The block at height 15 is not right.");
+
+            final IBlock block = mineBlocks(1).get(0);
+            assertEquals(20, store.append(block), "The next block should be appended behind the old ones.");
+        }
+    }
+
+    @Test
+    @DisplayName("A broken record is not read after reopening the store.")
+    public void brokenRecordIsNotRead(@TempDir Path directory) throws IOException {
+        final List<MineCoinBlock> blocks = mineBlocks(3);
+
+        try (MappedChainStore store = new MappedChainStore(directory, null, 4096)) {
+            blocks.forEach(store::append);
+        }
+
+        final Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow(IllegalStateException::new);
+        }
+        final byte[] bytes = Files.readAllBytes(segment);
+        bytes[recordStart(bytes, 2) + 20] ^= 0xFF;  // Breaks the checksum of the third record.
+        Files.write(segment, bytes);
+
+        try (MappedChainStore store = new MappedChainStore(directory, null, 4096)) {
+            assertEquals(2, store.size(), "Only the two complete records should be read.");
+        }
+    }
+
+    @Test
+    @DisplayName("A broken record ends the chain, the segments behind it are dropped.")
+    public void brokenRecordEndsChain(@TempDir Path directory) throws IOException {
+        final List<MineCoinBlock> blocks = mineBlocks(20);
+
+        try (MappedChainStore store = new MappedChainStore(directory, null, 512)) {
+            blocks.forEach(store::append);
+        }
+
+        final List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.sorted().collect(Collectors.toList());
+        }
+        assertTrue(segments.size() > 2, "The blocks should be split over more than two segments.");
+        final byte[] bytes = Files.readAllBytes(segments.get(0));
+        bytes[recordStart(bytes, 1) + 20] ^= 0xFF;  // Breaks the checksum of the second record.
+        Files.write(segments.get(0), bytes);
+
+        try (MappedChainStore store = new MappedChainStore(directory, null, 512)) {
+            assertEquals(1, store.size(), "Only the block in front of the broken record should be kept.");
+            assertEquals(blocks.get(0).getHash(), store.last().getHash(), "The last block is not right.");
+            assertEquals(-1, store.getHeight(blocks.get(19).getHash()), "A block behind it should not be found.");
+            assertEquals(1, store.append(blocks.get(1)), "The next block should be appended behind the kept one.");
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count(), "The segments behind the broken record should be deleted.");
+        }
+    }
+
+    @Test
+    @DisplayName("Truncated blocks are removed, also after reopening the store.")
+    public void truncateBlocks(@TempDir Path directory) throws IOException {
+        final List<MineCoinBlock> blocks = mineBlocks(20);
+        final MineCoinBlock replacement = mineBlocks(1).get(0);
+
+        try (MappedChainStore store = new MappedChainStore(directory, null, 512)) {
+            blocks.forEach(store::append);
+            store.truncate(5);
+
+            assertEquals(5, store.size(), "Only the first five blocks should be kept.");
+            assertEquals(-1, store.getHeight(blocks.get(10).getHash()), "A removed block should not be found.");
+            assertEquals(5, store.append(replacement), "The next block should be appended behind the kept ones.");
+        }
+
+        try (MappedChainStore store = new MappedChainStore(directory, null, 512)) {
+            assertEquals(6, store.size(), "The reopened store should only contain the kept blocks.");
+            assertEquals(replacement.getHash(), store.last().getHash(), "The last block is not right.");
+            assertEquals(blocks.get(4).getHash(), store.get(4).getHash(), "The kept block is not right.");
+        }
+    }
+
+    private static int recordStart(byte[] bytes, int record) {
+        int position = 0;
+        for (int i = 0; i < record; i++) {
+            final int length = ((bytes[position] & 0xFF) << 24) | ((bytes[position + 1] & 0xFF) << 16)
+                    | ((bytes[position + 2] & 0xFF) << 8) | (bytes[position + 3] & 0xFF);
+            position += 8 + length;
+        }
+        return position;
+    }
+
+}
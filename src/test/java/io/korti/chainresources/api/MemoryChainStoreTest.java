@@ -0,0 +1,85 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.api.blockchain.IBlock;
+import io.korti.chainresources.api.impl.MemoryChainStore;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MemoryChainStoreTest {
+
+    @Test
+    @DisplayName("Empty store has no blocks.")
+    public void emptyStore() {
+        final MemoryChainStore store = new MemoryChainStore();
+
+        assertTrue(store.isEmpty(), "The store should be empty.");
+        assertNull(store.last(), "An empty store has no last block.");
+        assertNull(store.get(0), "An empty store has no block at height 0.");
+    }
+
+    @Test
+    @DisplayName("Blocks keep their height over many chunks.")
+    public void blocksKeepHeight() {
+        final MemoryChainStore store = new MemoryChainStore();
+        final IBlock[] blocks = new IBlock[5000];
+
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = mock(IBlock.class);
+            assertEquals(i, store.append(blocks[i]), "The block should get the next height.");
+        }
+
+        assertEquals(blocks.length, store.size(), "The store should contain all blocks.");
+        for (int i = 0; i < blocks.length; i++) {
+            assertSame(blocks[i], store.get(i), "The block at height " + i + " is not right.");
+        }
+        assertSame(blocks[blocks.length - 1], store.last(), "The last block is not right.");
+        assertNull(store.get(blocks.length), "The store has no block after the last one.");
+    }
+
+    @Test
+    @DisplayName("Get a block by its hash.")
+    public void getBlockByHash() {
+        final MemoryChainStore store = new MemoryChainStore();
+        final IBlock blockOne = mock(IBlock.class);
+        final IBlock blockTwo = mock(IBlock.class);
+
+        when(blockOne.getHash()).thenReturn("A");
+        when(blockTwo.getHash()).thenReturn("B");
+
+        store.append(blockOne);
+        store.append(blockTwo);
+
+        assertSame(blockTwo, store.get("B"), "The block with the hash 'B' is not right.");
+        assertEquals(0, store.getHeight("A"), "The block with the hash 'A' should have the height 0.");
+        assertNull(store.get("C"), "The store has no block with the hash 'C'.");
+        assertEquals(-1, store.getHeight("C"), "An unknown hash should have the height -1.");
+    }
+
+    @Test
+    @DisplayName("Truncated blocks are removed.")
+    public void truncateBlocks() {
+        final MemoryChainStore store = new MemoryChainStore();
+        final IBlock blockOne = mock(IBlock.class);
+        final IBlock blockTwo = mock(IBlock.class);
+        final IBlock blockThree = mock(IBlock.class);
+
+        when(blockOne.getHash()).thenReturn("A");
+        when(blockTwo.getHash()).thenReturn("B");
+        when(blockThree.getHash()).thenReturn("C");
+
+        store.append(blockOne);
+        store.append(blockTwo);
+        store.truncate(1);
+
+        assertEquals(1, store.size(), "Only the first block should be kept.");
+        assertNull(store.get("B"), "The removed block should not be found by its hash.");
+        assertEquals(1, store.append(blockThree), "The next block should be appended behind the kept one.");
+        assertSame(blockThree, store.last(), "The last block is not right.");
+        assertThrows(IllegalArgumentException.class, () -> store.truncate(3), "A store can't grow by truncating.");
+    }
+
+}
@@ -0,0 +1,83 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.api.impl.MerkelTree;
+import io.korti.chainresources.api.impl.Util;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MerkelTreeTest {
+
+    private static List<byte[]> leaves(int count) {
+        final List<byte[]> leaves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            leaves.add(Util.sha256(("Leaf " + i).getBytes(StandardCharsets.UTF_8)));
+        }
+        return leaves;
+    }
+
+    @Test
+    @DisplayName("Empty tree has no root.")
+    public void emptyTreeHasNoRoot() {
+        assertNull(new MerkelTree().getRoot(), "An empty tree should not have a root.");
+    }
+
+    @Test
+    @DisplayName("Root of two leaves.")
+    public void rootOfTwoLeaves() {
+        final List<byte[]> leaves = leaves(2);
+
+        assertArrayEquals(Util.sha256(leaves.get(0), leaves.get(1)), new MerkelTree(leaves).getRoot(),
+                "The root should be the hash of both leaves.");
+    }
+
+    @Test
+    @DisplayName("Appending leaves gives the same root as building the whole tree.")
+    public void appendedTreeEqualsBuiltTree() {
+        final List<byte[]> leaves = leaves(13);
+        final MerkelTree tree = new MerkelTree();
+
+        for (int i = 0; i < leaves.size(); i++) {
+            tree.add(leaves.get(i));
+            assertArrayEquals(new MerkelTree(leaves.subList(0, i + 1)).getRoot(), tree.getRoot(),
+                    "The root after " + (i + 1) + " appended leaves is not right.");
+        }
+        assertEquals(13, tree.size(), "The tree should have 13 leaves.");
+    }
+
+    @Test
+    @DisplayName("Proofs of all leaves are valid.")
+    public void proofsAreValid() {
+        final List<byte[]> leaves = leaves(7);
+        final MerkelTree tree = new MerkelTree(leaves);
+
+        for (int i = 0; i < leaves.size(); i++) {
+            assertTrue(MerkelTree.verifyProof(leaves.get(i), i, tree.getProof(i), tree.getRoot()),
+                    "The proof of leaf " + i + " should be valid.");
+        }
+    }
+
+    @Test
+    @DisplayName("Proof of a different leaf is not valid.")
+    public void proofOfDifferentLeafIsNotValid() {
+        final List<byte[]> leaves = leaves(7);
+        final MerkelTree tree = new MerkelTree(leaves);
+
+        assertFalse(MerkelTree.verifyProof(leaves.get(1), 2, tree.getProof(2), tree.getRoot()),
+                "The proof of leaf 2 should not be valid for leaf 1.");
+    }
+
+    @Test
+    @DisplayName("Proof of a leaf that is not part of the tree.")
+    public void proofOfMissingLeaf() {
+        final MerkelTree tree = new MerkelTree(leaves(3));
+
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.getProof(3));
+    }
+
+}
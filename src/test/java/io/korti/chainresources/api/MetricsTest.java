@@ -0,0 +1,50 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.api.impl.Metrics;
+import io.korti.chainresources.api.impl.MineCoinBlockchain;
+import io.korti.chainresources.api.impl.Transaction;
+import io.korti.chainresources.api.impl.Wallet;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsTest {
+
+    @Test
+    @DisplayName("Rejected transactions are counted by their reason.")
+    public void countRejectedTransactions() {
+        final MineCoinBlockchain blockchain = new MineCoinBlockchain();
+        final Wallet sender = new Wallet(blockchain);
+        final Wallet receiver = new Wallet(blockchain);
+        final long notEnoughFunds = Metrics.Counter.TRANSACTIONS_NOT_ENOUGH_FUNDS.get();
+        final long invalidSignature = Metrics.Counter.TRANSACTIONS_INVALID_SIGNATURE.get();
+
+        assertNull(sender.sendFunds(receiver.getPublicKey(), 5f), "The sender has no funds.");
+        final Transaction transaction = new Transaction(blockchain, sender.getPublicKey(), receiver.getPublicKey(), 5f,
+                new ArrayList<>());
+        transaction.generateSignature(receiver.getPrivateKey());
+        assertFalse(transaction.processTransaction(), "The signature is not valid.");
+
+        assertTrue(Metrics.Counter.TRANSACTIONS_NOT_ENOUGH_FUNDS.get() > notEnoughFunds, "Not enough funds should be counted.");
+        assertTrue(Metrics.Counter.TRANSACTIONS_INVALID_SIGNATURE.get() > invalidSignature,
+                "The invalid signature should be counted.");
+    }
+
+    @Test
+    @DisplayName("The report has a line for every metric and gauge.")
+    public void reportHasAllMetrics() {
+        Metrics.registerGauge("Test gauge", () -> 42);
+
+        try {
+            assertTrue(Metrics.report().contains("Test gauge: 42"), "The gauge should be in the report.");
+            assertEquals(Metrics.Counter.values().length + Metrics.Latency.values().length + 1, Metrics.report().size(),
+                    "There should be a line for every metric.");
+        } finally {
+            Metrics.unregisterGauge("Test gauge");
+        }
+    }
+
+}
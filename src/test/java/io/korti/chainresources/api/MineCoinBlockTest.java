@@ -10,11 +10,14 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class MineCoinBlockTest {
@@ -63,6 +66,9 @@ public class MineCoinBlockTest {
         final ITransaction mockedTransactionTwo = mock(ITransaction.class);
         final ITransaction mockedTransactionThree = mock(ITransaction.class);
 
+        when(mockedTransactionOne.verifySignature()).thenReturn(true);
+        when(mockedTransactionTwo.verifySignature()).thenReturn(true);
+        when(mockedTransactionThree.verifySignature()).thenReturn(true);
         when(mockedTransactionOne.processTransaction()).thenReturn(true);
         when(mockedTransactionTwo.processTransaction()).thenReturn(false);
         when(mockedTransactionThree.processTransaction()).thenReturn(true);
@@ -79,6 +85,26 @@ public class MineCoinBlockTest {
         assertTrue(result.get(mockedTransactionThree), "The third added transaction was processable.");
     }
 
+    @Test
+    @DisplayName("A transaction with an invalid signature is not processed.")
+    public void skipTransactionWithInvalidSignature() {
+        final MineCoinBlock block = new MineCoinBlock("");
+        final ITransaction valid = mock(ITransaction.class);
+        final ITransaction invalid = mock(ITransaction.class);
+
+        when(valid.verifySignature()).thenReturn(true);
+        when(valid.processTransaction()).thenReturn(true);
+        when(invalid.verifySignature()).thenReturn(false);
+        when(invalid.processTransaction()).thenReturn(true);
+
+        Map<ITransaction, Boolean> result = block.addTransactions(Arrays.asList(valid, invalid));
+
+        assertTrue(result.get(valid), "The transaction with a valid signature should be added.");
+        assertFalse(result.get(invalid), "The transaction with an invalid signature should not be added.");
+        verify(invalid, never()).processTransaction();
+        assertEquals(1, block.getTransactions().size(), "Only the valid transaction should be in the block.");
+    }
+
     @Test
     @DisplayName("Hash value gets set on block creation.")
     public void hashGetsSetOnBlockCreation() {
@@ -87,6 +113,17 @@ public class MineCoinBlockTest {
         assertEquals(block.calculateHash(), block.getHash(), "The hash variable is not set on block creation.");
     }
 
+    @Test
+    @DisplayName("Hash value stays the same on recalculation.")
+    public void hashStaysSameOnRecalculation() {
+        final IBlock block = new MineCoinBlock("0");
+
+        block.mineBlock(32);
+
+        assertEquals(block.calculateHash(), block.calculateHash(), "The hash should not depend on earlier calculations.");
+        assertEquals(block.getHash(), block.calculateHash(), "The hash should be the same after a mining attempt.");
+    }
+
     @Test
     @DisplayName("Hash value gets changed on mining a block.")
     public void hashGetsChangedOnMiningABlock() {
@@ -112,6 +149,15 @@ public class MineCoinBlockTest {
         assertEquals(correctHash, block.getHash(), "The hash should not change if a block already got successful mined.");
     }
 
+    @Test
+    @DisplayName("The hex hash of a mined block is only created once.")
+    public void reuseHexHashOfMinedBlock() {
+        final IBlock block = new MineCoinBlock("");
+        while(!block.mineBlock(1));
+
+        assertSame(block.getHash(), block.getHash(), "The hex hash should be reused while the hash stays the same.");
+    }
+
     @Test
     @DisplayName("Hash should change after adding transaction.")
     public void hashShouldChangeAfterAddingTransaction() {
@@ -136,4 +182,39 @@ public class MineCoinBlockTest {
         assertTrue(block.isMined(2), "Block should be mined.");
     }
 
+    @Test
+    @DisplayName("Block is mined with a difficulty in bits.")
+    public void blockIsMinedWithBits() {
+        final IBlock block = new MineCoinBlock("");
+
+        while(!block.mineBlock(2));
+
+        assertTrue(block.isMinedBits(8), "Two hex characters are the same as 8 bits.");
+        assertEquals(block.isMined(3), block.isMinedBits(12), "Three hex characters are the same as 12 bits.");
+    }
+
+    @Test
+    @DisplayName("The default bit check reads the same bits as the block.")
+    public void defaultIsMinedBits() {
+        final IBlock block = new MineCoinBlock("");
+        while(!block.mineBlock(2));
+        final IBlock other = mock(IBlock.class, Mockito.CALLS_REAL_METHODS);
+        when(other.getHash()).thenReturn(block.getHash());
+
+        for (int bits = 0; bits <= 16; bits++) {
+            assertEquals(block.isMinedBits(bits), other.isMinedBits(bits), "The check of " + bits + " bits differs.");
+        }
+        assertTrue(other.getTransactions().isEmpty(), "The default block should have no transactions.");
+    }
+
+    @Test
+    @DisplayName("The difficulty is part of the hash.")
+    public void difficultyIsPartOfHash() {
+        final MineCoinBlock block = new MineCoinBlock("ABC", 8);
+
+        assertEquals(8, block.getDifficultyBits(), "The block should record its difficulty.");
+        assertNotEquals(new MineCoinBlock("ABC", 9).getHash(), block.getHash(),
+                "Another difficulty should give another hash.");
+    }
+
 }
@@ -1,20 +1,34 @@
 package io.korti.chainresources.api;
 
+import io.korti.chainresources.TestUtil;
 import io.korti.chainresources.api.blockchain.IBlock;
 import io.korti.chainresources.api.blockchain.IBlockchain;
 import io.korti.chainresources.api.blockchain.ITransaction;
+import io.korti.chainresources.api.blockchain.ITransactionInput;
 import io.korti.chainresources.api.blockchain.ITransactionOutput;
+import io.korti.chainresources.api.impl.MineCoinBlock;
 import io.korti.chainresources.api.impl.MineCoinBlockchain;
+import io.korti.chainresources.api.impl.Transaction;
+import io.korti.chainresources.api.impl.TransactionInput;
+import io.korti.chainresources.api.impl.TransactionOutput;
+import io.korti.chainresources.api.impl.Wallet;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 public class MineCoinBlockchainTest {
 
@@ -26,6 +40,14 @@ public class MineCoinBlockchainTest {
         assertEquals(5, blockchain.getDifficulty(), "The blockchain should start with the difficulty of 5.");
     }
 
+    @Test
+    @DisplayName("Start difficulty in bits.")
+    public void startDifficultyBits() {
+        final IBlockchain blockchain = new MineCoinBlockchain(5);
+
+        assertEquals(20, blockchain.getDifficultyBits(), "A difficulty of 5 hex characters should be 20 bits.");
+    }
+
     @Test
     @DisplayName("Custom min transaction value.")
     public void customMinTransactionValue() {
@@ -81,6 +103,31 @@ public class MineCoinBlockchainTest {
         assertNull(blockchain.lastBlock(), "The last block should be null if the blockchain is empty.");
     }
 
+    @Test
+    @DisplayName("Get blocks by height and hash.")
+    public void getBlocksByHeightAndHash() {
+        final IBlockchain blockchain = new MineCoinBlockchain(2);
+        final IBlock blockOne = mock(IBlock.class);
+        final IBlock blockTwo = mock(IBlock.class);
+
+        when(blockOne.isMined(2)).thenReturn(true);
+        when(blockOne.getHash()).thenReturn("A");
+        when(blockOne.getPreviousHash()).thenReturn("0");
+        when(blockTwo.isMined(2)).thenReturn(true);
+        when(blockTwo.getHash()).thenReturn("B");
+        when(blockTwo.getPreviousHash()).thenReturn("A");
+
+        assertEquals(-1, blockchain.height(), "An empty blockchain should have the height -1.");
+
+        blockchain.addBlock(blockOne);
+        blockchain.addBlock(blockTwo);
+
+        assertEquals(1, blockchain.height(), "The blockchain should have the height 1.");
+        assertEquals(blockOne, blockchain.getBlock(0), "The genesis block should have the height 0.");
+        assertEquals(blockTwo, blockchain.getBlock("B"), "The block with the hash 'B' is not right.");
+        assertNull(blockchain.getBlock(2), "The blockchain has no block at height 2.");
+    }
+
     @Test
     @DisplayName("Validate a blockchain with a block that has not a equal block hash.")
     public void validateNotEqualBlockHash() {
@@ -112,11 +159,12 @@ public class MineCoinBlockchainTest {
         when(blockTwo.calculateHash()).thenReturn("C");
 
         blockchain.addBlock(blockOne);
-        blockchain.addBlock(blockTwo);
+        boolean added = blockchain.addBlock(blockTwo);
 
-        boolean result = blockchain.validate();
-
-        assertFalse(result, "The blockchain should not be valid with a block that has not a equal prev hash.");
+        assertFalse(added, "A block with an unknown prev hash should not be added.");
+        assertEquals(0, blockchain.height(), "The blockchain should only have the first block.");
+        assertTrue(((MineCoinBlockchain) blockchain).getOrphanPool().contains("C"),
+                "The block should wait for its prev block in the orphan pool.");
     }
 
     @Test
@@ -187,6 +235,60 @@ public class MineCoinBlockchainTest {
         assertTrue(blockchain.isValid(), "The blockchain should be valid.");
     }
 
+    @Test
+    @DisplayName("Validate only checks blocks added since the last validation.")
+    public void validateOnlyChecksNewBlocks() {
+        final IBlockchain blockchain = new MineCoinBlockchain(2);
+        final IBlock blockOne = mock(IBlock.class);
+        final IBlock blockTwo = mock(IBlock.class);
+        final IBlock blockThree = mock(IBlock.class);
+
+        when(blockOne.isMined(2)).thenReturn(true);
+        when(blockOne.getHash()).thenReturn("A");
+        when(blockTwo.isMined(2)).thenReturn(true);
+        when(blockTwo.getPreviousHash()).thenReturn("A");
+        when(blockTwo.getHash()).thenReturn("B");
+        when(blockTwo.calculateHash()).thenReturn("B");
+        when(blockThree.isMined(2)).thenReturn(true);
+        when(blockThree.getPreviousHash()).thenReturn("B");
+        when(blockThree.getHash()).thenReturn("C");
+        when(blockThree.calculateHash()).thenReturn("C");
+
+        blockchain.addBlock(blockOne);
+        blockchain.addBlock(blockTwo);
+        blockchain.validate();
+        blockchain.addBlock(blockThree);
+
+        assertFalse(blockchain.isValid(), "The blockchain should need a validation after adding a block.");
+        assertTrue(blockchain.validate(), "The blockchain should be valid.");
+        verify(blockTwo, times(1)).calculateHash();
+        verify(blockThree, times(1)).calculateHash();
+    }
+
+    @Test
+    @DisplayName("Revalidate checks all blocks again.")
+    public void revalidateChecksAllBlocks() {
+        final IBlockchain blockchain = new MineCoinBlockchain(2);
+        final IBlock blockOne = mock(IBlock.class);
+        final IBlock blockTwo = mock(IBlock.class);
+
+        when(blockOne.isMined(2)).thenReturn(true);
+        when(blockOne.getHash()).thenReturn("A");
+        when(blockTwo.isMined(2)).thenReturn(true);
+        when(blockTwo.getPreviousHash()).thenReturn("A");
+        when(blockTwo.getHash()).thenReturn("B");
+        when(blockTwo.calculateHash()).thenReturn("B");
+
+        blockchain.addBlock(blockOne);
+        blockchain.addBlock(blockTwo);
+        blockchain.validate();
+        when(blockTwo.calculateHash()).thenReturn("X");
+
+        assertTrue(blockchain.validate(), "Validate should not check the already validated block again.");
+        assertFalse(blockchain.revalidate(), "Revalidate should find the changed block.");
+        assertFalse(blockchain.isValid(), "The blockchain should not be valid after a failed revalidation.");
+    }
+
     @Test
     @DisplayName("Add a UTXO to the blockchain.")
     public void addUTXOToBlockchain() {
@@ -249,4 +351,411 @@ public class MineCoinBlockchainTest {
 
         assertFalse(UTXOs.containsKey("A"), "The UTXO should be removed.");
     }
+
+    @Test
+    @DisplayName("Get the UTXOs of one wallet.")
+    public void getUTXOsOfWallet() {
+        final IBlockchain blockchain = new MineCoinBlockchain();
+        final PublicKey owner = TestUtil.generateKeyPair().getPublic();
+        final PublicKey otherOwner = TestUtil.generateKeyPair().getPublic();
+        final ITransactionOutput utxoOne = new TransactionOutput(owner, 2f, "A");
+        final ITransactionOutput utxoTwo = new TransactionOutput(otherOwner, 3f, "B");
+
+        blockchain.addUTXO(utxoOne);
+        blockchain.addUTXO(utxoTwo);
+
+        final Map<String, ITransactionOutput> UTXOs = blockchain.getUTXOs(owner);
+
+        assertEquals(1, UTXOs.size(), "Only the UTXO of the owner should be in the map.");
+        assertEquals(utxoOne, UTXOs.get(utxoOne.getID()), "The UTXO of the owner is not equal.");
+        assertTrue(blockchain.getUTXOs(TestUtil.generateKeyPair().getPublic()).isEmpty(),
+                "A wallet without UTXOs should get an empty map.");
+    }
+
+    @Test
+    @DisplayName("Balance of a wallet follows added and removed UTXOs.")
+    public void balanceFollowsUTXOs() {
+        final IBlockchain blockchain = new MineCoinBlockchain();
+        final PublicKey owner = TestUtil.generateKeyPair().getPublic();
+        final ITransactionOutput utxoOne = new TransactionOutput(owner, 2f, "A");
+        final ITransactionOutput utxoTwo = new TransactionOutput(owner, 3f, "B");
+
+        blockchain.addUTXO(utxoOne);
+        blockchain.addUTXO(utxoTwo);
+
+        assertEquals(5f, blockchain.getBalance(owner), "The balance should be the sum of both UTXOs.");
+
+        blockchain.removeUTXO(utxoOne.getID());
+
+        assertEquals(3f, blockchain.getBalance(owner), "The balance should drop after removing a UTXO.");
+        assertFalse(blockchain.getUTXOs(owner).containsKey(utxoOne.getID()), "The removed UTXO should not be indexed.");
+    }
+
+    @Test
+    @DisplayName("UTXOs read before a change stay the same.")
+    public void utxosAreSnapshot() {
+        final IBlockchain blockchain = new MineCoinBlockchain();
+        final PublicKey owner = TestUtil.generateKeyPair().getPublic();
+        blockchain.addUTXO(new TransactionOutput(owner, 2f, "A"));
+
+        final Map<String, ITransactionOutput> UTXOs = blockchain.getUTXOs();
+        blockchain.addUTXO(new TransactionOutput(owner, 3f, "B"));
+
+        assertEquals(1, UTXOs.size(), "The UTXOs read before should not see the new UTXO.");
+        assertEquals(2, blockchain.getUTXOs().size(), "The new UTXO should be in the chain.");
+    }
+
+    @Test
+    @DisplayName("A change with a missing UTXO to remove is not applied.")
+    public void updateWithMissingUTXO() {
+        final IBlockchain blockchain = new MineCoinBlockchain();
+        final PublicKey owner = TestUtil.generateKeyPair().getPublic();
+        final ITransactionOutput utxo = new TransactionOutput(owner, 2f, "A");
+
+        final boolean result = blockchain.updateUTXOs(Collections.singletonList(utxo), Collections.singletonList("B"));
+
+        assertFalse(result, "The change should not be applied.");
+        assertTrue(blockchain.getUTXOs().isEmpty(), "The UTXO should not be added.");
+        assertEquals(0f, blockchain.getBalance(owner), "The balance should not change.");
+    }
+
+    @Test
+    @DisplayName("Only one of many threads can spend the same UTXO.")
+    public void concurrentDoubleSpend() throws InterruptedException {
+        final IBlockchain blockchain = new MineCoinBlockchain();
+        final KeyPair sender = TestUtil.generateKeyPair();
+        final PublicKey receiver = TestUtil.generateKeyPair().getPublic();
+        final ITransactionOutput utxo = new TransactionOutput(sender.getPublic(), 10f, "Genesis");
+        blockchain.addUTXO(utxo);
+
+        final List<ITransaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final List<ITransactionInput> inputs = new ArrayList<>();
+            inputs.add(new TransactionInput(utxo.getID()));
+            final ITransaction transaction = new Transaction(blockchain, sender.getPublic(), receiver, 4f, inputs);
+            transaction.generateSignature(sender.getPrivate());
+            transactions.add(transaction);
+        }
+
+        final AtomicInteger processed = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        for (ITransaction transaction : transactions) {
+            final Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (transaction.processTransaction()) {
+                    processed.incrementAndGet();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, processed.get(), "Only one transaction should spend the UTXO.");
+        assertEquals(4f, blockchain.getBalance(receiver), "The receiver should get the funds once.");
+        assertEquals(6f, blockchain.getBalance(sender.getPublic()), "The sender should keep the rest.");
+        assertEquals(2, blockchain.getUTXOs().size(), "Only the two outputs of one transaction should be left.");
+    }
+
+    @Test
+    @DisplayName("UTXOs at the height of a block.")
+    public void utxosAtHeight() {
+        final IBlockchain blockchain = new MineCoinBlockchain(2);
+        final PublicKey owner = TestUtil.generateKeyPair().getPublic();
+        final IBlock blockOne = mock(IBlock.class);
+        final IBlock blockTwo = mock(IBlock.class);
+        when(blockOne.isMined(2)).thenReturn(true);
+        when(blockOne.getHash()).thenReturn("C");
+        when(blockOne.getPreviousHash()).thenReturn("0");
+        when(blockTwo.isMined(2)).thenReturn(true);
+        when(blockTwo.getHash()).thenReturn("D");
+        when(blockTwo.getPreviousHash()).thenReturn("C");
+
+        blockchain.addUTXO(new TransactionOutput(owner, 2f, "A"));
+        blockchain.addBlock(blockOne);
+        blockchain.addUTXO(new TransactionOutput(owner, 3f, "B"));
+        blockchain.addBlock(blockTwo);
+
+        assertEquals(1, blockchain.getUTXOsAtHeight(0).size(), "The first block should only see the first UTXO.");
+        assertEquals(2, blockchain.getUTXOsAtHeight(1).size(), "The second block should see both UTXOs.");
+        assertNull(blockchain.getUTXOsAtHeight(2), "There is no block at height 2.");
+    }
+
+    @Test
+    @DisplayName("A block without a previous hash is only added as the genesis block.")
+    public void rejectBlockWithoutPrevHash() {
+        final MineCoinBlockchain blockchain = new MineCoinBlockchain(2);
+        final IBlock genesis = mock(IBlock.class);
+        final IBlock unlinked = mock(IBlock.class);
+        when(genesis.isMined(2)).thenReturn(true);
+        when(genesis.getHash()).thenReturn("A");
+        when(unlinked.isMined(2)).thenReturn(true);
+        when(unlinked.getHash()).thenReturn("B");
+
+        assertTrue(blockchain.addBlock(genesis), "The genesis block should be added.");
+        assertFalse(blockchain.addBlock(unlinked), "A block without a previous hash should not be added.");
+        assertEquals(0, blockchain.height(), "The blockchain should only have the genesis block.");
+        assertFalse(blockchain.getOrphanPool().contains("B"), "The block should not wait in the orphan pool.");
+    }
+
+    @Test
+    @DisplayName("Switch to a side branch with more work.")
+    public void reorganizeToHeavierBranch() {
+        final KeyPair sender = TestUtil.generateKeyPair();
+        final PublicKey receiver = TestUtil.generateKeyPair().getPublic();
+        final PublicKey otherReceiver = TestUtil.generateKeyPair().getPublic();
+        final MineCoinBlockchain blockchain = new MineCoinBlockchain(0.01f, 1);
+        final MineCoinBlockchain otherBlockchain = new MineCoinBlockchain(0.01f, 1);   // Builds the side branch.
+
+        final MineCoinBlock genesis = mineBlock("0", 4);
+        for (MineCoinBlockchain chain : new MineCoinBlockchain[] {blockchain, otherBlockchain}) {
+            chain.addUTXO(new TransactionOutput(sender.getPublic(), 10f, "Genesis"));
+            assertTrue(chain.addBlock(genesis), "The genesis block should be added.");
+        }
+
+        final MineCoinBlock mainBlock = new MineCoinBlock(genesis.getHash(), 4);
+        mainBlock.addTransaction(new Wallet(blockchain, sender).sendFunds(receiver, 4f));
+        while (!mainBlock.isMinedBits(4)) mainBlock.mineBlock(64);
+        assertTrue(blockchain.addBlock(mainBlock), "The main block should be added.");
+
+        final Wallet otherSender = new Wallet(otherBlockchain, sender);
+        final MineCoinBlock sideOne = new MineCoinBlock(genesis.getHash(), 4);
+        sideOne.addTransaction(otherSender.sendFunds(otherReceiver, 3f));
+        while (!sideOne.isMinedBits(4)) sideOne.mineBlock(64);
+        final MineCoinBlock sideTwo = new MineCoinBlock(sideOne.getHash(), 4);
+        sideTwo.addTransaction(otherSender.sendFunds(otherReceiver, 2f));
+        while (!sideTwo.isMinedBits(4)) sideTwo.mineBlock(64);
+
+        assertTrue(blockchain.addBlock(sideOne), "The side block should be added.");
+        assertSame(mainBlock, blockchain.lastBlock(), "A branch with the same work should not replace the main chain.");
+        assertEquals(2, blockchain.getTips().size(), "The main chain and the side branch should have a tip.");
+
+        assertTrue(blockchain.addBlock(sideTwo), "The side block should be added.");
+        assertSame(sideTwo, blockchain.lastBlock(), "The branch with more work should be the main chain.");
+        assertEquals(2, blockchain.height(), "The main chain should have the height of the branch.");
+        assertEquals(5f, blockchain.getBalance(sender.getPublic()), "The sender balance should be of the branch.");
+        assertEquals(0f, blockchain.getBalance(receiver), "The funds of the replaced block should be undone.");
+        assertEquals(5f, blockchain.getBalance(otherReceiver), "The funds of the branch should be applied.");
+        assertTrue(blockchain.validate(), "The reorganized chain should be valid.");
+
+        final List<MineCoinBlockchain.ChainTip> tips = blockchain.getTips();
+        assertEquals(2, tips.size(), "The replaced block should be a side branch now.");
+        assertTrue(tips.get(0).isMain(), "The main tip should be first.");
+        assertEquals(mainBlock.getHash(), tips.get(1).getHash(), "The replaced block should be the side tip.");
+        assertEquals(0, tips.get(1).getForkHeight(), "The side branch should fork after the genesis block.");
+
+        final List<ITransaction> disconnected = blockchain.takeDisconnectedTransactions();
+        assertEquals(1, disconnected.size(), "The transaction of the replaced block should be returned.");
+        assertSame(mainBlock.getTransactions().get(0), disconnected.get(0), "The replaced transaction should match.");
+        assertTrue(blockchain.takeDisconnectedTransactions().isEmpty(), "They should only be returned once.");
+    }
+
+    @Test
+    @DisplayName("Switch to a side branch whose blocks got built on the same chain.")
+    public void reorganizeToLocallyBuiltBranch() {
+        final KeyPair sender = TestUtil.generateKeyPair();
+        final KeyPair otherSender = TestUtil.generateKeyPair();
+        final PublicKey receiver = TestUtil.generateKeyPair().getPublic();
+        final PublicKey otherReceiver = TestUtil.generateKeyPair().getPublic();
+        final MineCoinBlockchain blockchain = new MineCoinBlockchain(0.01f, 1);
+        blockchain.addUTXO(new TransactionOutput(sender.getPublic(), 10f, "Genesis"));
+        blockchain.addUTXO(new TransactionOutput(otherSender.getPublic(), 10f, "Other Genesis"));
+        final MineCoinBlock genesis = mineBlock("0", 4);
+        assertTrue(blockchain.addBlock(genesis), "The genesis block should be added.");
+
+        final MineCoinBlock mainBlock = new MineCoinBlock(genesis.getHash(), 4);
+        assertTrue(mainBlock.addTransaction(new Wallet(blockchain, sender).sendFunds(receiver, 4f)),
+                "The main transaction should be added.");
+        while (!mainBlock.isMinedBits(4)) mainBlock.mineBlock(64);
+        assertTrue(blockchain.addBlock(mainBlock), "The main block should be added.");
+
+        // Both side blocks get built on this chain, so their transactions get processed before the blocks are added.
+        final Wallet otherWallet = new Wallet(blockchain, otherSender);
+        final MineCoinBlock sideOne = new MineCoinBlock(genesis.getHash(), 4);
+        assertTrue(sideOne.addTransaction(otherWallet.sendFunds(otherReceiver, 3f)),
+                "The side transaction should be added.");
+        while (!sideOne.isMinedBits(4)) sideOne.mineBlock(64);
+        assertTrue(blockchain.addBlock(sideOne), "The side block should be added.");
+        final MineCoinBlock sideTwo = new MineCoinBlock(sideOne.getHash(), 4);
+        assertTrue(sideTwo.addTransaction(otherWallet.sendFunds(otherReceiver, 2f)),
+                "The side transaction should be added.");
+        while (!sideTwo.isMinedBits(4)) sideTwo.mineBlock(64);
+
+        assertTrue(blockchain.addBlock(sideTwo), "The side block should be added.");
+        assertSame(sideTwo, blockchain.lastBlock(), "The branch with more work should be the main chain.");
+        assertEquals(10f, blockchain.getBalance(sender.getPublic()), "The replaced transaction should be undone.");
+        assertEquals(0f, blockchain.getBalance(receiver), "The funds of the replaced block should be undone.");
+        assertEquals(5f, blockchain.getBalance(otherSender.getPublic()), "The branch should only be applied once.");
+        assertEquals(5f, blockchain.getBalance(otherReceiver), "The funds of the branch should be applied.");
+        assertEquals(blockchain.getUTXOsAtHeight(2), blockchain.getUTXOs(), "No change should be pending anymore.");
+        assertTrue(blockchain.validate(), "The reorganized chain should be valid.");
+    }
+
+    @Test
+    @DisplayName("A side branch that spends unknown UTXOs doesn't replace the main chain.")
+    public void keepMainChainForInvalidBranch() {
+        final KeyPair sender = TestUtil.generateKeyPair();
+        final PublicKey receiver = TestUtil.generateKeyPair().getPublic();
+        final MineCoinBlockchain blockchain = new MineCoinBlockchain(0.01f, 1);
+        final MineCoinBlockchain otherBlockchain = new MineCoinBlockchain(0.01f, 1);
+
+        final MineCoinBlock genesis = mineBlock("0", 4);
+        assertTrue(blockchain.addBlock(genesis), "The genesis block should be added.");
+        assertTrue(otherBlockchain.addBlock(genesis), "The genesis block should be added.");
+        final MineCoinBlock mainBlock = mineBlock(genesis.getHash(), 4);
+        assertTrue(blockchain.addBlock(mainBlock), "The main block should be added.");
+
+        otherBlockchain.addUTXO(new TransactionOutput(sender.getPublic(), 10f, "Unknown"));
+        final MineCoinBlock sideOne = new MineCoinBlock(genesis.getHash(), 4);
+        sideOne.addTransaction(new Wallet(otherBlockchain, sender).sendFunds(receiver, 3f));
+        while (!sideOne.isMinedBits(4)) sideOne.mineBlock(64);
+        final MineCoinBlock sideTwo = mineBlock(sideOne.getHash(), 4);
+
+        assertTrue(blockchain.addBlock(sideOne), "The side block should be added.");
+        assertTrue(blockchain.addBlock(sideTwo), "The side block should be added.");
+
+        assertSame(mainBlock, blockchain.lastBlock(), "The invalid branch should not replace the main chain.");
+        assertEquals(0f, blockchain.getBalance(receiver), "The transaction of the branch should not be applied.");
+    }
+
+    @Test
+    @DisplayName("Blocks that arrive before their previous block are added when it arrives.")
+    public void connectOrphans() {
+        final MineCoinBlockchain blockchain = new MineCoinBlockchain(0.01f, 1);
+        final MineCoinBlock genesis = mineBlock("0", 4);
+        final MineCoinBlock blockOne = mineBlock(genesis.getHash(), 4);
+        final MineCoinBlock blockTwo = mineBlock(blockOne.getHash(), 4);
+        final MineCoinBlock blockThree = mineBlock(blockTwo.getHash(), 4);
+        assertTrue(blockchain.addBlock(genesis), "The genesis block should be added.");
+
+        assertFalse(blockchain.addBlock(blockThree), "The block should wait for its previous block.");
+        assertFalse(blockchain.addBlock(blockTwo), "The block should wait for its previous block.");
+        assertEquals(2, blockchain.getOrphanPool().size(), "Both blocks should be kept as orphans.");
+        assertEquals(0, blockchain.height(), "Orphans should not be part of the chain.");
+
+        assertTrue(blockchain.addBlock(blockOne), "The missing block should be added.");
+
+        assertEquals(3, blockchain.height(), "The orphans should be added after the missing block.");
+        assertSame(blockThree, blockchain.lastBlock(), "The orphans should be added in their order.");
+        assertEquals(0, blockchain.getOrphanPool().size(), "The orphan pool should be empty.");
+        assertTrue(blockchain.validate(), "The blockchain should be valid.");
+    }
+
+    private static MineCoinBlock mineBlock(String prevHash, int difficultyBits) {
+        final MineCoinBlock block = new MineCoinBlock(prevHash, difficultyBits);
+        while (!block.isMinedBits(difficultyBits)) {
+            block.mineBlock(64);    // One attempt per call, 256 bits are never reached.
+        }
+        return block;
+    }
+
+    @Test
+    @DisplayName("Fast blocks raise the difficulty and slow blocks lower it.")
+    public void retargetDifficulty() {
+        final MineCoinBlockchain blockchain = new MineCoinBlockchain(1);
+        final AtomicLong clock = new AtomicLong();
+        blockchain.setRetargeting(1000, 2, clock::get);
+
+        String prevHash = "0";
+        for (int i = 0; i < 2; i++) {
+            final MineCoinBlock block = mineBlock(prevHash, blockchain.getDifficultyBits());
+            clock.addAndGet(250);   // Four times faster than the target.
+            assertTrue(blockchain.addBlock(block), "The block should be added.");
+            prevHash = block.getHash();
+        }
+        assertEquals(6, blockchain.getDifficultyBits(), "The difficulty should go up by two bits.");
+
+        for (int i = 0; i < 2; i++) {
+            final MineCoinBlock block = mineBlock(prevHash, blockchain.getDifficultyBits());
+            clock.addAndGet(2000);  // Two times slower than the target.
+            assertTrue(blockchain.addBlock(block), "The block should be added.");
+            prevHash = block.getHash();
+        }
+        assertEquals(5, blockchain.getDifficultyBits(), "The difficulty should go down by one bit.");
+        assertTrue(blockchain.revalidate(), "Blocks should be checked against their own difficulty.");
+    }
+
+    @Test
+    @DisplayName("A block mined for a lower difficulty is not added.")
+    public void addBlockWithLowerDifficulty() {
+        final IBlockchain blockchain = new MineCoinBlockchain(2);
+        final MineCoinBlock block = mineBlock("0", 4);
+
+        assertFalse(blockchain.addBlock(block), "The block should not be added.");
+    }
+
+    @Test
+    @DisplayName("A block is checked against the difficulty after its previous block.")
+    public void addBlockForPreviousDifficulty() {
+        final MineCoinBlockchain blockchain = new MineCoinBlockchain(1);
+        final AtomicLong clock = new AtomicLong();
+        blockchain.setRetargeting(1000, 1, clock::get);
+
+        final MineCoinBlock genesis = mineBlock("0", blockchain.getDifficultyBits());
+        clock.addAndGet(250);
+        assertTrue(blockchain.addBlock(genesis), "The genesis block should be added.");
+        final int genesisTarget = blockchain.getDifficultyBits();
+
+        final MineCoinBlock side = mineBlock(genesis.getHash(), genesisTarget);    // Built before the retarget.
+        final MineCoinBlock main = mineBlock(genesis.getHash(), genesisTarget + 1);
+        clock.addAndGet(250);
+        assertTrue(blockchain.addBlock(main), "The block should be added.");
+        assertTrue(blockchain.getDifficultyBits() > genesisTarget, "The difficulty should go up.");
+
+        assertTrue(blockchain.addBlock(side), "The block mined for its previous block should be added.");
+        assertEquals(2, blockchain.getTips().size(), "The block should start a side branch.");
+    }
+
+    @Test
+    @DisplayName("A rejected block doesn't change the UTXOs, its builder takes its changes back.")
+    public void discardRejectedBlock() {
+        final KeyPair sender = TestUtil.generateKeyPair();
+        final PublicKey receiver = TestUtil.generateKeyPair().getPublic();
+        final MineCoinBlockchain blockchain = new MineCoinBlockchain(0.01f, 1);
+        blockchain.addUTXO(new TransactionOutput(sender.getPublic(), 10f, "Genesis"));
+        final MineCoinBlock genesis = mineBlock("0", 4);
+        assertTrue(blockchain.addBlock(genesis), "The genesis block should be added.");
+
+        final MineCoinBlock block = new MineCoinBlock(genesis.getHash(), 2);   // Easier than the chain allows.
+        assertTrue(block.addTransaction(new Wallet(blockchain, sender).sendFunds(receiver, 4f)),
+                "The transaction should be added to the block.");
+        assertEquals(4f, blockchain.getBalance(receiver), "The transaction should be processed.");
+
+        assertFalse(blockchain.addBlock(block), "The block should not be added.");
+        assertEquals(4f, blockchain.getBalance(receiver), "Rejecting the block should not change the UTXOs.");
+
+        blockchain.discardTransactions(block.getTransactions());
+        assertEquals(10f, blockchain.getBalance(sender.getPublic()), "The sender should get the funds back.");
+        assertEquals(0f, blockchain.getBalance(receiver), "The receiver should not keep the funds.");
+    }
+
+    @Test
+    @DisplayName("Discarding the transactions of a connected block doesn't change the UTXOs.")
+    public void keepConnectedTransactions() {
+        final KeyPair sender = TestUtil.generateKeyPair();
+        final PublicKey receiver = TestUtil.generateKeyPair().getPublic();
+        final MineCoinBlockchain blockchain = new MineCoinBlockchain(0.01f, 1);
+        blockchain.addUTXO(new TransactionOutput(sender.getPublic(), 10f, "Genesis"));
+        final MineCoinBlock genesis = mineBlock("0", 4);
+        assertTrue(blockchain.addBlock(genesis), "The genesis block should be added.");
+
+        final MineCoinBlock block = new MineCoinBlock(genesis.getHash(), 4);
+        assertTrue(block.addTransaction(new Wallet(blockchain, sender).sendFunds(receiver, 4f)),
+                "The transaction should be added to the block.");
+        while (!block.isMinedBits(4)) block.mineBlock(64);
+        assertTrue(blockchain.addBlock(block), "The block should be added.");
+        assertFalse(blockchain.addBlock(block), "The block should not be added twice.");
+
+        blockchain.discardTransactions(block.getTransactions());
+        assertEquals(4f, blockchain.getBalance(receiver), "The outputs of the main chain should be kept.");
+        assertEquals(6f, blockchain.getBalance(sender.getPublic()), "The spent outputs should stay spent.");
+    }
 }
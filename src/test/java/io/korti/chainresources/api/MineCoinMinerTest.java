@@ -0,0 +1,82 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.api.blockchain.ITransaction;
+import io.korti.chainresources.api.impl.MineCoinBlock;
+import io.korti.chainresources.api.impl.MineCoinMiner;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MineCoinMinerTest {
+
+    private static MineCoinMiner miner;
+
+    @BeforeAll
+    public static void init() {
+        MineCoinMinerTest.miner = new MineCoinMiner(4);
+    }
+
+    @AfterAll
+    public static void shutdown() {
+        MineCoinMinerTest.miner.shutdown();
+    }
+
+    @Test
+    @DisplayName("Miner needs at least one worker.")
+    public void minerNeedsWorkers() {
+        assertThrows(IllegalArgumentException.class, () -> new MineCoinMiner(0));
+    }
+
+    @Test
+    @DisplayName("Block is mined by the miner.")
+    public void blockIsMinedByMiner() {
+        final MineCoinBlock block = new MineCoinBlock("");
+
+        boolean result = miner.mine(block, 3);
+
+        assertTrue(result, "The miner should find a hash.");
+        assertTrue(block.isMined(3), "Block should be mined.");
+        assertEquals(block.calculateHash(), block.getHash(), "The published hash should belong to the published nonce.");
+    }
+
+    @Test
+    @DisplayName("Hash value should not get changed after a block got mined by the miner.")
+    public void hashShouldNotChangeAfterBlockGotMined() {
+        final MineCoinBlock block = new MineCoinBlock("");
+
+        miner.mine(block, 2);
+        final String correctHash = block.getHash();
+        miner.mine(block, 2);
+
+        assertEquals(correctHash, block.getHash(), "The hash should not change if a block already got mined.");
+    }
+
+    @Test
+    @DisplayName("The hash of a block mined after adding a transaction covers the transaction.")
+    public void hashCoversAddedTransaction() {
+        final MineCoinBlock block = new MineCoinBlock("ABC");
+        final ITransaction transaction = mock(ITransaction.class);
+        when(transaction.processTransaction()).thenReturn(true);
+        block.addTransaction(transaction);
+
+        assertTrue(miner.mineBits(block, 0), "Every hash should meet a difficulty of 0 bits.");
+        assertEquals(block.calculateHash(), block.getHash(), "The hash should include the added transaction.");
+    }
+
+    @Test
+    @DisplayName("Miner reports attempts per second.")
+    public void minerReportsAttemptsPerSecond() {
+        final MineCoinBlock block = new MineCoinBlock("ABC");
+
+        miner.mine(block, 3);
+
+        assertTrue(miner.getAttempts() > 0, "The miner should count its attempts.");
+        assertTrue(miner.getAttemptsPerSecond() > 0, "The miner should report attempts per second.");
+    }
+
+}
@@ -0,0 +1,72 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.api.impl.MineCoinBlock;
+import io.korti.chainresources.api.impl.MineCoinBlockchain;
+import io.korti.chainresources.api.impl.MineCoinMiner;
+import io.korti.chainresources.api.impl.MiningScheduler;
+import io.korti.chainresources.api.impl.TransactionOutput;
+import io.korti.chainresources.api.impl.TransactionPool;
+import io.korti.chainresources.api.impl.Wallet;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MiningSchedulerTest {
+
+    private static void tickUntil(MiningScheduler scheduler, long blocks) throws InterruptedException {
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (scheduler.getAddedBlocks() < blocks && System.nanoTime() < end) {
+            scheduler.tick();
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    @DisplayName("Mined blocks are added to the chain on tick.")
+    public void minedBlocksAddedOnTick() throws InterruptedException {
+        final MineCoinBlockchain blockchain = new MineCoinBlockchain(1);
+        final TransactionPool pool = new TransactionPool();
+        final MiningScheduler scheduler = new MiningScheduler(blockchain, pool, new MineCoinMiner(2),
+                TimeUnit.MILLISECONDS.toNanos(1), 16);
+        final Wallet sender = new Wallet(blockchain);
+        final Wallet receiver = new Wallet(blockchain);
+        scheduler.start();
+
+        tickUntil(scheduler, 1);
+        assertEquals(0, blockchain.height(), "The genesis block should be mined first.");
+        assertEquals("0", blockchain.lastBlock().getPreviousHash(), "The first block should be the genesis block.");
+
+        tickUntil(scheduler, 2);
+        assertEquals(0, blockchain.height(), "Without transactions no block should be mined.");
+
+        blockchain.addUTXO(new TransactionOutput(sender.getPublicKey(), 10f, "Genesis"));
+        assertTrue(pool.submit(sender.sendFunds(receiver.getPublicKey(), 4f)), "The transaction should be accepted.");
+        tickUntil(scheduler, 2);
+
+        assertTrue(scheduler.shutdown(), "The scheduler should stop.");
+        assertEquals(1, blockchain.height(), "The block with the transaction should be added.");
+        assertEquals(4f, receiver.getBalance(), "The receiver should get the funds.");
+        assertTrue(blockchain.validate(), "The chain should be valid.");
+    }
+
+    @Test
+    @DisplayName("Mining goes on where the last tick stopped.")
+    public void miningGoesOnAfterDeadline() {
+        final MineCoinMiner miner = new MineCoinMiner(2);
+        final MineCoinBlock block = new MineCoinBlock("A");
+
+        boolean mined = false;
+        for (int i = 0; i < 100_000 && !mined; i++) {
+            mined = miner.mineBits(block, 16, System.nanoTime());
+        }
+        miner.shutdown();
+
+        assertTrue(mined, "The block should be mined over many short runs.");
+        assertTrue(block.isMinedBits(16), "The block should be mined.");
+        assertEquals(block.calculateHash(), block.getHash(), "The hash should belong to the nonce.");
+    }
+
+}
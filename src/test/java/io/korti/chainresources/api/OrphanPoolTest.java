@@ -0,0 +1,81 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.api.blockchain.IBlock;
+import io.korti.chainresources.api.impl.OrphanPool;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class OrphanPoolTest {
+
+    private static IBlock block(String hash, String prevHash) {
+        final IBlock block = mock(IBlock.class);
+        when(block.getHash()).thenReturn(hash);
+        when(block.getPreviousHash()).thenReturn(prevHash);
+        return block;
+    }
+
+    @Test
+    @DisplayName("Children are found by the hash of their previous block.")
+    public void removeChildren() {
+        final OrphanPool pool = new OrphanPool();
+        final IBlock first = block("B", "A");
+        final IBlock second = block("C", "A");
+        pool.add(first);
+        pool.add(second);
+        pool.add(block("D", "B"));
+
+        final List<IBlock> children = pool.removeChildren("A");
+
+        assertEquals(2, children.size(), "Both children of 'A' should be removed.");
+        assertSame(first, children.get(0), "The children should be in the order they got added.");
+        assertEquals(1, pool.size(), "The child of 'B' should be kept.");
+        assertTrue(pool.removeChildren("A").isEmpty(), "The children should only be removed once.");
+    }
+
+    @Test
+    @DisplayName("A block is only kept once.")
+    public void noDuplicates() {
+        final OrphanPool pool = new OrphanPool();
+
+        assertTrue(pool.add(block("B", "A")), "The block should be kept.");
+        assertFalse(pool.add(block("B", "A")), "The same block should not be kept twice.");
+        assertEquals(1, pool.size(), "The pool should have one block.");
+    }
+
+    @Test
+    @DisplayName("Blocks older than the max age are evicted.")
+    public void evictByAge() {
+        final AtomicLong now = new AtomicLong(0);
+        final OrphanPool pool = new OrphanPool(1000, OrphanPool.DEFAULT_MAX_BYTES, now::get);
+        pool.add(block("B", "A"));
+        now.set(600);
+        pool.add(block("C", "A"));
+
+        now.set(1200);
+        pool.evictStale();
+
+        assertFalse(pool.contains("B"), "The old block should be evicted.");
+        assertTrue(pool.contains("C"), "The newer block should be kept.");
+        assertEquals(1, pool.removeChildren("A").size(), "The evicted block should not be a child anymore.");
+    }
+
+    @Test
+    @DisplayName("The oldest blocks make room if the pool is full.")
+    public void evictByMemory() {
+        final OrphanPool pool = new OrphanPool(OrphanPool.DEFAULT_MAX_AGE_MILLIS, 1000);
+        pool.add(block("B", "A"));
+        pool.add(block("C", "B"));
+
+        assertFalse(pool.contains("B"), "The oldest block should make room.");
+        assertTrue(pool.contains("C"), "The new block should be kept.");
+        assertTrue(pool.getBytes() <= 1000, "The pool should not use more than its max memory.");
+    }
+
+}
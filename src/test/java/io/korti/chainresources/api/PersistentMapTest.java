@@ -0,0 +1,108 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.api.impl.PersistentMap;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentMapTest {
+
+    /**
+     * Key with a fixed hash, so the map has to keep keys with the same hash apart.
+     */
+    private static final class CollidingKey {
+
+        private final int id;
+
+        private CollidingKey(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof CollidingKey && ((CollidingKey) other).id == this.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 42;
+        }
+    }
+
+    @Test
+    @DisplayName("Add and remove entries like a hash map.")
+    public void behavesLikeHashMap() {
+        final Random random = new Random(7);
+        final Map<Integer, Integer> expected = new HashMap<>();
+        PersistentMap<Integer, Integer> map = PersistentMap.empty();
+
+        for (int i = 0; i < 20_000; i++) {
+            final int key = random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                expected.put(key, i);
+                map = map.plus(key, i);
+            }
+        }
+
+        assertEquals(expected.size(), map.size(), "The size is not right.");
+        assertEquals(expected, map, "The entries are not right.");
+        assertEquals(expected, new HashMap<>(map), "Iterating the map should give all entries.");
+    }
+
+    @Test
+    @DisplayName("Old versions don't change.")
+    public void oldVersionsDontChange() {
+        final PersistentMap<String, Integer> first = PersistentMap.<String, Integer>empty().plus("A", 1).plus("B", 2);
+
+        final PersistentMap<String, Integer> second = first.plus("C", 3).minus("A").plus("B", 4);
+
+        assertEquals(2, first.size(), "The first version should keep two entries.");
+        assertEquals(1, (int) first.get("A"), "The first version should keep A.");
+        assertEquals(2, (int) first.get("B"), "The first version should keep the old value of B.");
+        assertFalse(first.containsKey("C"), "The first version should not get C.");
+        assertEquals(2, second.size(), "The second version should have two entries.");
+        assertEquals(4, (int) second.get("B"), "The second version should have the new value of B.");
+    }
+
+    @Test
+    @DisplayName("Keys with the same hash are kept apart.")
+    public void collidingKeys() {
+        PersistentMap<CollidingKey, Integer> map = PersistentMap.empty();
+        for (int i = 0; i < 10; i++) {
+            map = map.plus(new CollidingKey(i), i);
+        }
+
+        map = map.minus(new CollidingKey(3));
+
+        assertEquals(9, map.size(), "The map should have nine entries.");
+        assertNull(map.get(new CollidingKey(3)), "The removed key should be gone.");
+        assertEquals(7, (int) map.get(new CollidingKey(7)), "The other keys should stay.");
+    }
+
+    @Test
+    @DisplayName("Changing the map through the map interface is not possible.")
+    public void mapIsImmutable() {
+        final PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty().plus("A", 1);
+
+        assertThrows(UnsupportedOperationException.class, () -> map.put("B", 2));
+        assertThrows(UnsupportedOperationException.class, () -> map.entrySet().iterator().next().setValue(2));
+    }
+
+    @Test
+    @DisplayName("Removing a missing key returns the same map.")
+    public void removeMissingKey() {
+        final PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty().plus("A", 1);
+
+        assertSame(map, map.minus("B"), "Nothing changed, so the map should be the same.");
+        assertTrue(map.minus("A").isEmpty(), "The map should be empty.");
+    }
+
+}
@@ -0,0 +1,181 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.api.impl.MineCoinBlock;
+import io.korti.chainresources.api.impl.PersistentMineCoinBlockchain;
+import io.korti.chainresources.api.impl.TransactionOutput;
+import io.korti.chainresources.api.impl.Wallet;
+import io.korti.chainresources.api.impl.WriteAheadLog;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.PublicKey;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentMineCoinBlockchainTest {
+
+    @Test
+    @DisplayName("Blocks and UTXOs are restored after reopening the blockchain.")
+    public void restoreAfterReopening(@TempDir Path directory) {
+        final PublicKey senderKey;
+        final PublicKey receiverKey;
+        final String lastHash;
+
+        try (PersistentMineCoinBlockchain blockchain = new PersistentMineCoinBlockchain(directory, 0.01f, 1)) {
+            final Wallet sender = new Wallet(blockchain);
+            final Wallet receiver = new Wallet(blockchain);
+            senderKey = sender.getPublicKey();
+            receiverKey = receiver.getPublicKey();
+
+            final MineCoinBlock genesis = new MineCoinBlock("0");
+            while (!genesis.mineBlock(1));
+            assertTrue(blockchain.addBlock(genesis), "The genesis block should be added.");
+
+            blockchain.addUTXO(new TransactionOutput(senderKey, 10f, "Genesis"));
+            final MineCoinBlock block = new MineCoinBlock(genesis.getHash());
+            assertTrue(block.addTransaction(sender.sendFunds(receiverKey, 4f)), "The transaction should be added.");
+            while (!block.mineBlock(1));
+            assertTrue(blockchain.addBlock(block), "The block should be added.");
+            lastHash = block.getHash();
+        }
+
+        try (PersistentMineCoinBlockchain blockchain = new PersistentMineCoinBlockchain(directory, 0.01f, 1)) {
+            assertEquals(1, blockchain.height(), "The reopened blockchain should have both blocks.");
+            assertEquals(lastHash, blockchain.getBlock(1).getHash(), "The last block is not right.");
+            assertEquals(1, blockchain.getBlock(lastHash).getTransactions().size(), "The transaction should be restored.");
+            assertTrue(blockchain.revalidate(), "The restored blocks should be valid.");
+            assertEquals(6f, blockchain.getBalance(senderKey), "The change should be restored as UTXO.");
+            assertEquals(4f, blockchain.getBalance(receiverKey), "The sent funds should be restored as UTXO.");
+        }
+    }
+
+    @Test
+    @DisplayName("UTXOs are loaded from the snapshot and only the newer blocks are replayed.")
+    public void restoreFromSnapshot(@TempDir Path directory) throws Exception {
+        final PublicKey senderKey;
+        final PublicKey receiverKey;
+
+        try (PersistentMineCoinBlockchain blockchain = new PersistentMineCoinBlockchain(directory, 0.01f, 1,
+                1 << 20, 2)) {
+            final Wallet sender = new Wallet(blockchain);
+            final Wallet receiver = new Wallet(blockchain);
+            senderKey = sender.getPublicKey();
+            receiverKey = receiver.getPublicKey();
+
+            final MineCoinBlock genesis = new MineCoinBlock("0");
+            while (!genesis.mineBlock(1));
+            assertTrue(blockchain.addBlock(genesis), "The genesis block should be added.");
+            blockchain.addUTXO(new TransactionOutput(senderKey, 10f, "Genesis"));
+
+            for (float value : new float[] {4f, 1f, 2f}) {
+                final MineCoinBlock block = new MineCoinBlock(blockchain.lastBlock().getHash());
+                assertTrue(block.addTransaction(sender.sendFunds(receiverKey, value)), "The transaction should be added.");
+                while (!block.mineBlock(1));
+                assertTrue(blockchain.addBlock(block), "The block should be added.");
+            }
+        }
+
+        try (PersistentMineCoinBlockchain blockchain = new PersistentMineCoinBlockchain(directory, 0.01f, 1,
+                1 << 20, 2)) {
+            assertEquals(2, blockchain.getRestoredHeight(), "The UTXOs should be loaded from the snapshot of height 2.");
+            assertEquals(3f, blockchain.getBalance(senderKey), "The sender balance is not right.");
+            assertEquals(7f, blockchain.getBalance(receiverKey), "The receiver balance is not right.");
+        }
+
+        // A broken snapshot is skipped and the UTXOs get rebuilt from the blocks.
+        final Path snapshot = findSnapshots(directory).get(0);
+        final byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(snapshot, bytes);
+
+        try (PersistentMineCoinBlockchain blockchain = new PersistentMineCoinBlockchain(directory, 0.01f, 1,
+                1 << 20, 2)) {
+            assertEquals(-1, blockchain.getRestoredHeight(), "The broken snapshot should not be used.");
+            assertEquals(3f, blockchain.getBalance(senderKey), "The sender balance is not right.");
+            assertEquals(7f, blockchain.getBalance(receiverKey), "The receiver balance is not right.");
+        }
+    }
+
+    @Test
+    @DisplayName("UTXO changes outside of blocks are recovered from the log.")
+    public void recoverFromLog(@TempDir Path directory) {
+        final PublicKey key = new Wallet(null).getPublicKey();
+
+        try (PersistentMineCoinBlockchain blockchain = new PersistentMineCoinBlockchain(directory, 0.01f, 1,
+                1 << 20, 2, WriteAheadLog.Durability.PER_TRANSACTION)) {
+            blockchain.addUTXO(new TransactionOutput(key, 10f, "A"));
+            blockchain.addUTXO(new TransactionOutput(key, 5f, "B"));
+            blockchain.removeUTXO(new TransactionOutput(key, 5f, "B").getID());
+        }
+
+        try (PersistentMineCoinBlockchain blockchain = new PersistentMineCoinBlockchain(directory, 0.01f, 1,
+                1 << 20, 2, WriteAheadLog.Durability.PER_TRANSACTION)) {
+            assertEquals(10f, blockchain.getBalance(key), "The logged UTXOs should be recovered.");
+            assertEquals(1, blockchain.getUTXOs().size(), "The spent UTXO should not be recovered.");
+        }
+    }
+
+    @Test
+    @DisplayName("Changes of transactions that wait for their block are not logged.")
+    public void skipPendingChanges(@TempDir Path directory) {
+        final PublicKey senderKey;
+        final PublicKey receiverKey;
+
+        try (PersistentMineCoinBlockchain blockchain = new PersistentMineCoinBlockchain(directory, 0.01f, 1)) {
+            final Wallet sender = new Wallet(blockchain);
+            senderKey = sender.getPublicKey();
+            receiverKey = new Wallet(blockchain).getPublicKey();
+            final MineCoinBlock genesis = new MineCoinBlock("0");
+            while (!genesis.mineBlock(1));
+            assertTrue(blockchain.addBlock(genesis), "The genesis block should be added.");
+            blockchain.addUTXO(new TransactionOutput(senderKey, 10f, "Genesis"));
+
+            final MineCoinBlock block = new MineCoinBlock(genesis.getHash());   // Never mined.
+            assertTrue(block.addTransaction(sender.sendFunds(receiverKey, 4f)), "The transaction should be added.");
+            assertEquals(4f, blockchain.getBalance(receiverKey), "The pending transaction should be visible.");
+        }
+
+        try (PersistentMineCoinBlockchain blockchain = new PersistentMineCoinBlockchain(directory, 0.01f, 1)) {
+            assertEquals(10f, blockchain.getBalance(senderKey), "The pending transaction should not be recovered.");
+            assertEquals(0f, blockchain.getBalance(receiverKey), "The pending outputs should not be recovered.");
+        }
+    }
+
+    @Test
+    @DisplayName("A UTXO change after a failed log write is not applied.")
+    public void rejectUnloggedChange(@TempDir Path directory) throws Exception {
+        final PublicKey key = new Wallet(null).getPublicKey();
+        final PersistentMineCoinBlockchain blockchain = new PersistentMineCoinBlockchain(directory, 0.01f, 1,
+                1 << 20, 2, WriteAheadLog.Durability.PER_TRANSACTION);
+        blockchain.addUTXO(new TransactionOutput(key, 10f, "A"));
+
+        final Field logField = PersistentMineCoinBlockchain.class.getDeclaredField("log");
+        logField.setAccessible(true);
+        final Field channelField = WriteAheadLog.class.getDeclaredField("channel");
+        channelField.setAccessible(true);
+        ((FileChannel) channelField.get(logField.get(blockchain))).close();     // Every write fails from here on.
+
+        assertThrows(UncheckedIOException.class, () -> blockchain.addUTXO(new TransactionOutput(key, 5f, "B")),
+                "The failed log write should be reported.");
+        assertThrows(UncheckedIOException.class, () -> blockchain.addUTXO(new TransactionOutput(key, 2f, "C")),
+                "The stopped log should reject the change.");
+        assertEquals(15f, blockchain.getBalance(key), "The not logged UTXO should not be visible.");
+        assertThrows(UncheckedIOException.class, blockchain::close, "Closing should report the failed write.");
+    }
+
+    private static List<Path> findSnapshots(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".snap")).collect(Collectors.toList());
+        }
+    }
+
+}
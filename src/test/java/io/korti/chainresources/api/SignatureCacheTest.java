@@ -0,0 +1,66 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.TestUtil;
+import io.korti.chainresources.api.impl.SignatureCache;
+import io.korti.chainresources.api.impl.Util;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SignatureCacheTest {
+
+    private static KeyPair keyPair;
+
+    @BeforeAll
+    public static void init() {
+        SignatureCacheTest.keyPair = TestUtil.generateKeyPair();
+    }
+
+    @Test
+    @DisplayName("A stored signature is found again.")
+    public void storedSignatureIsFound() {
+        final SignatureCache cache = new SignatureCache(64);
+        final byte[] data = {1, 2, 3};
+        final byte[] signature = {4, 5, 6};
+
+        assertFalse(cache.contains("SHA256withRSA", keyPair.getPublic(), data, signature), "The cache should be empty.");
+        cache.add("SHA256withRSA", keyPair.getPublic(), data, signature);
+
+        assertTrue(cache.contains("SHA256withRSA", keyPair.getPublic(), data, signature), "The signature should be found.");
+        assertFalse(cache.contains("SHA256withRSA", keyPair.getPublic(), data, new byte[]{4, 5, 7}),
+                "A different signature should not be found.");
+        assertFalse(cache.contains("SHA256withRSA", keyPair.getPublic(), new byte[]{1, 2}, new byte[]{3, 4, 5, 6}),
+                "Moving bytes from the data to the signature should not be found.");
+        assertEquals(1, cache.getHits(), "There should be one hit.");
+        assertEquals(3, cache.getMisses(), "There should be three misses.");
+    }
+
+    @Test
+    @DisplayName("The cache doesn't grow over its max size.")
+    public void cacheIsBounded() {
+        final SignatureCache cache = new SignatureCache(64);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.add("SHA256withRSA", keyPair.getPublic(), new byte[]{(byte) i, (byte) (i >>> 8)}, new byte[0]);
+        }
+
+        assertTrue(cache.size() <= 64, "The cache should not hold more than 64 entries.");
+    }
+
+    @Test
+    @DisplayName("Verifying a signature again is a cache hit.")
+    public void verifyAgainIsCacheHit() {
+        final byte[] signature = Util.applySHA256RSASig(keyPair.getPrivate(), "Cached data");
+        final long hits = Util.getSignatureCache().getHits();
+
+        assertTrue(Util.verifySHA256RSASig(keyPair.getPublic(), "Cached data", signature), "The signature is valid.");
+        assertTrue(Util.verifySHA256RSASig(keyPair.getPublic(), "Cached data", signature), "The signature is valid.");
+
+        assertTrue(Util.getSignatureCache().getHits() > hits, "The second check should be a cache hit.");
+    }
+
+}
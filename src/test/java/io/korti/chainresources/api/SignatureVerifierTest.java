@@ -0,0 +1,61 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.TestUtil;
+import io.korti.chainresources.api.impl.SignatureVerifier;
+import io.korti.chainresources.api.impl.Transaction;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SignatureVerifierTest {
+
+    private static SignatureVerifier verifier;
+    private static KeyPair senderWallet;
+    private static KeyPair receiverWallet;
+
+    @BeforeAll
+    public static void init() {
+        SignatureVerifierTest.verifier = new SignatureVerifier(4);
+        SignatureVerifierTest.senderWallet = TestUtil.generateKeyPair();
+        SignatureVerifierTest.receiverWallet = TestUtil.generateKeyPair();
+    }
+
+    @AfterAll
+    public static void shutdown() {
+        SignatureVerifierTest.verifier.shutdown();
+    }
+
+    @Test
+    @DisplayName("Verifier needs at least one worker.")
+    public void verifierNeedsWorkers() {
+        assertThrows(IllegalArgumentException.class, () -> new SignatureVerifier(0));
+    }
+
+    @Test
+    @DisplayName("Results are in the order of the transactions.")
+    public void resultsInOrder() {
+        final List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            final Transaction transaction = new Transaction(null, senderWallet.getPublic(), receiverWallet.getPublic(),
+                    i, null);
+            // Every third transaction is signed with the wrong key.
+            transaction.generateSignature((i % 3 == 0) ? receiverWallet.getPrivate() : senderWallet.getPrivate());
+            transactions.add(transaction);
+        }
+
+        final boolean[] results = verifier.verifyAll(transactions);
+
+        assertEquals(transactions.size(), results.length, "There should be a result for every transaction.");
+        for (int i = 0; i < results.length; i++) {
+            assertEquals(i % 3 != 0, results[i], "The result of transaction " + i + " is not right.");
+        }
+    }
+
+}
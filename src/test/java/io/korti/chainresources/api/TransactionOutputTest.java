@@ -54,4 +54,18 @@ public class TransactionOutputTest {
         assertFalse(utxo.isMine(secondWalletKey), "This UTXO should not be mine.");
     }
 
+    @Test
+    @DisplayName("The UTXO id depends on the receiver and the parent transaction.")
+    public void idDependsOnReceiverAndParent() {
+        final PublicKey secondWalletKey = TestUtil.generateKeyPair().getPublic();
+        final ITransactionOutput utxo = new TransactionOutput(walletKey, 0, "ABC");
+
+        assertEquals(utxo.getID(), new TransactionOutput(walletKey, 1, "ABC").getID(),
+                "The same receiver and parent should give the same id.");
+        assertNotEquals(utxo.getID(), new TransactionOutput(secondWalletKey, 0, "ABC").getID(),
+                "Another receiver should give another id.");
+        assertNotEquals(utxo.getID(), new TransactionOutput(walletKey, 0, "ABD").getID(),
+                "Another parent should give another id.");
+    }
+
 }
@@ -0,0 +1,140 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.api.blockchain.ITransaction;
+import io.korti.chainresources.api.blockchain.ITransactionInput;
+import io.korti.chainresources.api.impl.MineCoinBlock;
+import io.korti.chainresources.api.impl.SignatureVerifier;
+import io.korti.chainresources.api.impl.TransactionInput;
+import io.korti.chainresources.api.impl.TransactionPool;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TransactionPoolTest {
+
+    private static ITransaction mockTransaction(boolean validSignature, String... outputIds) {
+        final ITransaction transaction = mock(ITransaction.class);
+        final List<ITransactionInput> inputs = new ArrayList<>();
+        for (String outputId : outputIds) {
+            inputs.add(new TransactionInput(outputId));
+        }
+        when(transaction.verifySignature()).thenReturn(validSignature);
+        when(transaction.getInputs()).thenReturn(inputs);
+        when(transaction.processTransaction()).thenReturn(true);
+        return transaction;
+    }
+
+    @Test
+    @DisplayName("Transactions with a not valid signature are rejected.")
+    public void rejectNotValidSignature() {
+        final TransactionPool pool = new TransactionPool();
+
+        assertFalse(pool.submit(mockTransaction(false, "A")), "The transaction should be rejected.");
+        assertEquals(0, pool.size(), "The pool should be empty.");
+    }
+
+    @Test
+    @DisplayName("Transactions without inputs are rejected.")
+    public void rejectWithoutInputs() {
+        final TransactionPool pool = new TransactionPool();
+
+        assertFalse(pool.submit(mockTransaction(true)), "The transaction should be rejected.");
+    }
+
+    @Test
+    @DisplayName("Spending the same output twice is rejected.")
+    public void rejectDoubleSpend() {
+        final TransactionPool pool = new TransactionPool();
+        final ITransaction transaction = mockTransaction(true, "A", "B");
+
+        assertTrue(pool.submit(transaction), "The first transaction should be accepted.");
+        assertFalse(pool.submit(transaction), "The same transaction should not be accepted twice.");
+        assertFalse(pool.submit(mockTransaction(true, "C", "B")), "Spending B again should be rejected.");
+        assertTrue(pool.submit(mockTransaction(true, "C")), "C should not be claimed by the rejected transaction.");
+        assertEquals(2, pool.size(), "The pool should have two transactions.");
+    }
+
+    @Test
+    @DisplayName("Full pool rejects transactions.")
+    public void rejectOnFullPool() {
+        final TransactionPool pool = new TransactionPool(1, SignatureVerifier.getDefault());
+
+        assertTrue(pool.submit(mockTransaction(true, "A")), "The first transaction should be accepted.");
+        assertFalse(pool.submit(mockTransaction(true, "B")), "The pool should be full.");
+    }
+
+    @Test
+    @DisplayName("Filling a block takes the transactions in order and releases their outputs.")
+    public void fillBlockInOrder() {
+        final TransactionPool pool = new TransactionPool();
+        final ITransaction first = mockTransaction(true, "A");
+        final ITransaction second = mockTransaction(true, "B");
+        final ITransaction third = mockTransaction(true, "C");
+        when(second.processTransaction()).thenReturn(false);
+        pool.submit(first);
+        pool.submit(second);
+        pool.submit(third);
+        final MineCoinBlock block = new MineCoinBlock("ABC");
+
+        final int added = pool.fillBlock(block, 2);
+
+        assertEquals(1, added, "Only the first transaction was processable.");
+        assertEquals(Collections.singletonList(first), block.getTransactions(), "The block should have the first transaction.");
+        assertEquals(Collections.singletonList(third), pool.drain(10), "The third transaction should still be pending.");
+        assertTrue(pool.submit(mockTransaction(true, "B")), "The output of the dropped transaction should be released.");
+    }
+
+    @Test
+    @DisplayName("Only one of many threads spending the same output wins.")
+    public void concurrentDoubleSpend() throws InterruptedException {
+        final TransactionPool pool = new TransactionPool();
+        final AtomicInteger accepted = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            final ITransaction transaction = mockTransaction(true, "Unique " + i, "Shared");
+            final Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (pool.submit(transaction)) {
+                    accepted.incrementAndGet();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, accepted.get(), "Only one transaction should be accepted.");
+        assertEquals(1, pool.size(), "The pool should have one transaction.");
+    }
+
+    @Test
+    @DisplayName("Submit many transactions at once.")
+    public void submitAll() {
+        final TransactionPool pool = new TransactionPool();
+        final List<ITransaction> transactions = Arrays.asList(mockTransaction(true, "A"),
+                mockTransaction(false, "B"), mockTransaction(true, "A"));
+
+        final boolean[] results = pool.submitAll(transactions);
+
+        assertArrayEquals(new boolean[]{true, false, false}, results, "Only the first transaction should be accepted.");
+    }
+
+}
@@ -5,6 +5,7 @@ import io.korti.chainresources.api.blockchain.IBlockchain;
 import io.korti.chainresources.api.blockchain.ITransaction;
 import io.korti.chainresources.api.blockchain.ITransactionInput;
 import io.korti.chainresources.api.blockchain.ITransactionOutput;
+import io.korti.chainresources.api.impl.SignatureScheme;
 import io.korti.chainresources.api.impl.Transaction;
 import org.junit.jupiter.api.*;
 import org.mockito.Mockito;
@@ -16,6 +17,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import static org.mockito.Mockito.*;
 
 public class TransactionTest {
@@ -51,6 +53,45 @@ public class TransactionTest {
         assertFalse(transaction.verifySignature(), "The transaction should not be verified.");
     }
 
+    @Test
+    @DisplayName("Signing again checks the new signature.")
+    public void signAgainAfterVerify() {
+        final ITransaction transaction = new Transaction(null,
+                senderWallet.getPublic(), receiverWallet.getPublic(), 10f, null);
+
+        transaction.generateSignature(receiverWallet.getPrivate());
+        assertFalse(transaction.verifySignature(), "The transaction should not be verified.");
+        transaction.generateSignature(senderWallet.getPrivate());
+
+        assertTrue(transaction.verifySignature(), "The new signature should be verified.");
+    }
+
+    @Test
+    @DisplayName("Sign and verify a transaction with EC keys.")
+    public void signAndVerifyWithECKeys() {
+        final KeyPair sender = SignatureScheme.EC.generateKeyPair();
+        final ITransaction transaction = new Transaction(null,
+                sender.getPublic(), receiverWallet.getPublic(), 10f, null);
+
+        assertFalse(transaction.verifySignature(), "The not signed transaction should not be verified.");
+        transaction.generateSignature(sender.getPrivate());
+
+        assertTrue(transaction.verifySignature(), "The transaction should be verified.");
+    }
+
+    @Test
+    @DisplayName("Sign and verify a transaction with Ed25519 keys.")
+    public void signAndVerifyWithEd25519Keys() {
+        assumeTrue(SignatureScheme.ED25519.isSupported(), "Ed25519 needs Java 15 or newer.");
+        final KeyPair sender = SignatureScheme.ED25519.generateKeyPair();
+        final ITransaction transaction = new Transaction(null,
+                sender.getPublic(), receiverWallet.getPublic(), 10f, null);
+
+        transaction.generateSignature(sender.getPrivate());
+
+        assertTrue(transaction.verifySignature(), "The transaction should be verified.");
+    }
+
     @Test
     @DisplayName("Verify a not signed transaction.")
     public void verifyNotSignedTransaction() {
@@ -159,6 +200,7 @@ public class TransactionTest {
             UTXOs.remove(argument);
             return null;
         }).when(blockchain).removeUTXO(anyString());
+        doCallRealMethod().when(blockchain).updateUTXOs(any(), any());
         //endregion
 
         final ITransaction transaction = new Transaction(blockchain, senderWallet.getPublic(),
@@ -222,6 +264,7 @@ public class TransactionTest {
             UTXOs.remove(argument);
             return null;
         }).when(blockchain).removeUTXO(anyString());
+        doCallRealMethod().when(blockchain).updateUTXOs(any(), any());
         //endregion
 
         final ITransaction transaction = new Transaction(blockchain, senderWallet.getPublic(),
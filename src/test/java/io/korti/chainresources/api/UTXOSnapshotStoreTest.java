@@ -0,0 +1,99 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.TestUtil;
+import io.korti.chainresources.api.blockchain.IBlock;
+import io.korti.chainresources.api.blockchain.IChainStore;
+import io.korti.chainresources.api.blockchain.ITransactionOutput;
+import io.korti.chainresources.api.impl.MemoryChainStore;
+import io.korti.chainresources.api.impl.TransactionOutput;
+import io.korti.chainresources.api.impl.UTXOSnapshotStore;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class UTXOSnapshotStoreTest {
+
+    @Test
+    @DisplayName("Snapshot is loaded with the same UTXOs.")
+    public void writeAndLoad(@TempDir Path directory) {
+        final PublicKey first = TestUtil.generateKeyPair().getPublic();
+        final PublicKey second = TestUtil.generateKeyPair().getPublic();
+        final List<ITransactionOutput> utxos = Arrays.asList(new TransactionOutput(first, 1f, "A"),
+                new TransactionOutput(second, 2f, "B"), new TransactionOutput(first, 3f, "C"));
+        final UTXOSnapshotStore store = new UTXOSnapshotStore(directory);
+
+        store.write(1, "Hash 1", utxos);
+        final UTXOSnapshotStore.Snapshot snapshot = store.loadNewest(chainOf("Hash 0", "Hash 1"));
+
+        assertNotNull(snapshot, "The snapshot should be loaded.");
+        assertEquals(1, snapshot.getHeight(), "The height is not right.");
+        assertEquals("Hash 1", snapshot.getBlockHash(), "The block hash is not right.");
+        assertEquals(3, snapshot.getUTXOs().size(), "Every UTXO should be loaded.");
+        for (int i = 0; i < utxos.size(); i++) {
+            final ITransactionOutput loaded = snapshot.getUTXOs().get(i);
+            assertEquals(utxos.get(i).getID(), loaded.getID(), "The ID is not right.");
+            assertEquals(utxos.get(i).getReceiver(), loaded.getReceiver(), "The receiver is not right.");
+            assertEquals(utxos.get(i).getValue(), loaded.getValue(), "The value is not right.");
+        }
+    }
+
+    @Test
+    @DisplayName("Snapshot of a block that isn't in the chain anymore is skipped.")
+    public void skipSnapshotOfOtherBlock(@TempDir Path directory) {
+        final PublicKey key = TestUtil.generateKeyPair().getPublic();
+        final UTXOSnapshotStore store = new UTXOSnapshotStore(directory, 3);
+
+        store.write(0, "Hash 0", Arrays.asList(new TransactionOutput(key, 1f, "A")));
+        store.write(1, "Other hash", Arrays.asList(new TransactionOutput(key, 2f, "B")));
+        store.write(5, "Hash 5", Arrays.asList(new TransactionOutput(key, 3f, "C")));
+        final UTXOSnapshotStore.Snapshot snapshot = store.loadNewest(chainOf("Hash 0", "Hash 1"));
+
+        assertNotNull(snapshot, "The older snapshot should be loaded.");
+        assertEquals(0, snapshot.getHeight(), "The snapshot that fits the chain should be loaded.");
+    }
+
+    @Test
+    @DisplayName("Only the newest snapshots are kept.")
+    public void deleteOldSnapshots(@TempDir Path directory) throws Exception {
+        final PublicKey key = TestUtil.generateKeyPair().getPublic();
+        final UTXOSnapshotStore store = new UTXOSnapshotStore(directory, 2);
+
+        for (int height = 0; height < 4; height++) {
+            store.write(height, "Hash " + height, Arrays.asList(new TransactionOutput(key, height, "A")));
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count(), "Only two snapshots should be kept.");
+        }
+        assertEquals(3, store.loadNewest(chainOf("Hash 0", "Hash 1", "Hash 2", "Hash 3")).getHeight(),
+                "The newest snapshot should be kept.");
+    }
+
+    @Test
+    @DisplayName("No snapshot is loaded from an empty directory.")
+    public void noSnapshot(@TempDir Path directory) {
+        assertNull(new UTXOSnapshotStore(directory.resolve("missing")).loadNewest(new MemoryChainStore()),
+                "There is no snapshot to load.");
+    }
+
+    private static IChainStore chainOf(String... hashes) {
+        final IChainStore store = new MemoryChainStore();
+        for (String hash : hashes) {
+            final IBlock block = mock(IBlock.class);
+            when(block.getHash()).thenReturn(hash);
+            store.append(block);
+        }
+        return store;
+    }
+
+}
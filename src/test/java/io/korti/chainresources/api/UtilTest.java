@@ -0,0 +1,70 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.api.impl.Util;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UtilTest {
+
+    @Test
+    @DisplayName("MD5 hash as hex string.")
+    public void md5HexString() {
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", Util.toMD5("abc"), "The MD5 hash of 'abc' is not right.");
+    }
+
+    @Test
+    @DisplayName("SHA-256 hash as hex string.")
+    public void sha256HexString() {
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", Util.toSHA256("abc"),
+                "The SHA-256 hash of 'abc' is not right.");
+    }
+
+    @Test
+    @DisplayName("Byte hash matches the hex string hash.")
+    public void byteHashMatchesHexHash() {
+        final byte[] input = "abc".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(Util.toSHA256("abc"), Util.toHex(Util.sha256(input)), "The byte and string hash should be equal.");
+        assertEquals(Util.toSHA256("abc"), Util.toHex(Util.digest(ByteBuffer.wrap(input), "SHA-256")),
+                "The buffer and string hash should be equal.");
+    }
+
+    @Test
+    @DisplayName("Hashing the same input twice gives the same hash.")
+    public void reusedDigestGivesSameHash() {
+        final byte[] input = "abc".getBytes(StandardCharsets.UTF_8);
+
+        assertArrayEquals(Util.md5(input), Util.md5(input), "A reused digest should not keep state from the last call.");
+    }
+
+    @Test
+    @DisplayName("Bytes to hex string.")
+    public void bytesToHex() {
+        assertEquals("00ff7f80", Util.toHex(new byte[]{0x00, (byte) 0xFF, 0x7F, (byte) 0x80}), "The hex string is not right.");
+    }
+
+    @Test
+    @DisplayName("Count leading 0 bits.")
+    public void countLeadingZeroBits() {
+        assertEquals(0, Util.leadingZeroBits(new byte[]{(byte) 0x80, 0x00}), "The hash starts with a 1 bit.");
+        assertEquals(11, Util.leadingZeroBits(new byte[]{0x00, 0x10}), "The hash starts with 11 0 bits.");
+        assertEquals(16, Util.leadingZeroBits(new byte[]{0x00, 0x00}), "The hash only has 0 bits.");
+    }
+
+    @Test
+    @DisplayName("Check leading 0 bits.")
+    public void checkLeadingZeroBits() {
+        final byte[] hash = new byte[]{0x00, 0x10};
+
+        assertTrue(Util.hasLeadingZeroBits(hash, 8), "The hash starts with 8 0 bits.");
+        assertTrue(Util.hasLeadingZeroBits(hash, 11), "The hash starts with 11 0 bits.");
+        assertFalse(Util.hasLeadingZeroBits(hash, 12), "The hash doesn't start with 12 0 bits.");
+        assertFalse(Util.hasLeadingZeroBits(hash, 17), "The hash is shorter than 17 bits.");
+    }
+
+}
@@ -4,18 +4,21 @@ import io.korti.chainresources.api.blockchain.IBlockchain;
 import io.korti.chainresources.api.blockchain.ITransaction;
 import io.korti.chainresources.api.blockchain.ITransactionOutput;
 import io.korti.chainresources.api.blockchain.IWallet;
+import io.korti.chainresources.api.impl.MineCoinBlockchain;
+import io.korti.chainresources.api.impl.SignatureScheme;
+import io.korti.chainresources.api.impl.TransactionOutput;
 import io.korti.chainresources.api.impl.Wallet;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.security.KeyPair;
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 public class WalletTest {
 
@@ -35,60 +38,71 @@ public class WalletTest {
         assertNotNull(wallet.getPrivateKey(), "The wallet should have a private key.");
     }
 
+    @Test
+    @DisplayName("Wallet uses the supplied key pair.")
+    public void usesSuppliedKeyPair() {
+        final KeyPair keyPair = SignatureScheme.EC.generateKeyPair();
+        final IWallet wallet = new Wallet(null, keyPair);
+
+        assertSame(keyPair.getPublic(), wallet.getPublicKey(), "The wallet should use the supplied public key.");
+        assertSame(keyPair.getPrivate(), wallet.getPrivateKey(), "The wallet should use the supplied private key.");
+    }
+
+    @Test
+    @DisplayName("Wallet with EC keys sends a verified transaction.")
+    public void sendFundsWithECKeys() {
+        final IBlockchain blockchain = new MineCoinBlockchain();
+        final IWallet wallet = new Wallet(blockchain, SignatureScheme.EC.generateKeyPair());
+        blockchain.addUTXO(new TransactionOutput(wallet.getPublicKey(), 10f, "A"));
+
+        final ITransaction transaction = wallet.sendFunds(SignatureScheme.EC.generateKeyPair().getPublic(), 5f);
+
+        assertNotNull(transaction, "The wallet has enough funds.");
+        assertTrue(transaction.verifySignature(), "The transaction should be signed with the EC key.");
+    }
+
     @Test
     @DisplayName("Wallet has the right balance.")
     public void hasRightBalance() {
-        final IBlockchain blockchain = mock(IBlockchain.class);
+        final IBlockchain blockchain = new MineCoinBlockchain();
 
         final IWallet wallet = new Wallet(blockchain);
+        final IWallet otherWallet = new Wallet(blockchain);
 
-        final ITransactionOutput UTXO1 = mock(ITransactionOutput.class);
-        final ITransactionOutput UTXO2 = mock(ITransactionOutput.class);
-        final ITransactionOutput UTXO3 = mock(ITransactionOutput.class);
+        blockchain.addUTXO(new TransactionOutput(wallet.getPublicKey(), 7f, "A"));
+        blockchain.addUTXO(new TransactionOutput(wallet.getPublicKey(), 8f, "B"));
+        blockchain.addUTXO(new TransactionOutput(otherWallet.getPublicKey(), 5f, "C"));
 
-        final Map<String, ITransactionOutput> UTXOs = new HashMap<>(3);
+        float result = wallet.getBalance();
 
-        UTXOs.put("A", UTXO1);
-        UTXOs.put("B", UTXO2);
-        UTXOs.put("C", UTXO3);
+        assertEquals(15f, result, "The wallet balance is not right.");
+    }
 
-        when(blockchain.getUTXOs()).thenReturn(UTXOs);
+    @Test
+    @DisplayName("Wallet balance asks the blockchain for the UTXOs of the wallet.")
+    public void balanceUsesOwnerIndex() {
+        final IBlockchain blockchain = mock(IBlockchain.class);
 
-        when(UTXO1.isMine(wallet.getPublicKey())).thenReturn(true);
-        when(UTXO2.isMine(wallet.getPublicKey())).thenReturn(true);
-        when(UTXO3.isMine(wallet.getPublicKey())).thenReturn(false);
+        final IWallet wallet = new Wallet(blockchain);
 
-        when(UTXO1.getValue()).thenReturn(7f);
-        when(UTXO2.getValue()).thenReturn(8f);
+        when(blockchain.getBalance(wallet.getPublicKey())).thenReturn(15f);
 
         float result = wallet.getBalance();
 
         assertEquals(15f, result, "The wallet balance is not right.");
+        verify(blockchain, never()).getUTXOs();
     }
 
     @Test
     @DisplayName("Send more funds then the wallet has balance.")
     public void sendFundsWithNotEnoughBalance() {
-        final IBlockchain blockchain = mock(IBlockchain.class);
+        final IBlockchain blockchain = new MineCoinBlockchain();
 
         final IWallet senderWallet = new Wallet(blockchain);
         final IWallet receiverWallet = new Wallet(blockchain);
 
-        final ITransactionOutput UTXO1 = mock(ITransactionOutput.class);
-        final ITransactionOutput UTXO2 = mock(ITransactionOutput.class);
-
-        final Map<String, ITransactionOutput> UTXOs = new HashMap<>(3);
-
-        UTXOs.put("A", UTXO1);
-        UTXOs.put("B", UTXO2);
-
-        when(blockchain.getUTXOs()).thenReturn(UTXOs);
-
-        when(UTXO1.isMine(senderWallet.getPublicKey())).thenReturn(true);
-        when(UTXO2.isMine(senderWallet.getPublicKey())).thenReturn(true);
-
-        when(UTXO1.getValue()).thenReturn(7f);
-        when(UTXO2.getValue()).thenReturn(8f);
+        blockchain.addUTXO(new TransactionOutput(senderWallet.getPublicKey(), 7f, "A"));
+        blockchain.addUTXO(new TransactionOutput(senderWallet.getPublicKey(), 8f, "B"));
 
         ITransaction transaction = senderWallet.sendFunds(receiverWallet.getPublicKey(), 20f);
 
@@ -98,30 +112,20 @@ public class WalletTest {
     @Test
     @DisplayName("Send funds from one wallet to another one.")
     public void sendFunds() {
-        final IBlockchain blockchain = mock(IBlockchain.class);
+        final IBlockchain blockchain = new MineCoinBlockchain();
 
         final IWallet senderWallet = new Wallet(blockchain);
         final IWallet receiverWallet = new Wallet(blockchain);
 
-        final ITransactionOutput UTXO1 = mock(ITransactionOutput.class);
-        final ITransactionOutput UTXO2 = mock(ITransactionOutput.class);
-
-        final Map<String, ITransactionOutput> UTXOs = new HashMap<>(3);
-
-        UTXOs.put("A", UTXO1);
-        UTXOs.put("B", UTXO2);
-
-        when(blockchain.getUTXOs()).thenReturn(UTXOs);
-
-        when(UTXO1.isMine(senderWallet.getPublicKey())).thenReturn(true);
-        when(UTXO2.isMine(senderWallet.getPublicKey())).thenReturn(true);
-
-        when(UTXO1.getValue()).thenReturn(7f);
-        when(UTXO2.getValue()).thenReturn(8f);
+        blockchain.addUTXO(new TransactionOutput(senderWallet.getPublicKey(), 7f, "A"));
+        blockchain.addUTXO(new TransactionOutput(senderWallet.getPublicKey(), 8f, "B"));
 
         ITransaction transaction = senderWallet.sendFunds(receiverWallet.getPublicKey(), 12f);
 
         assertNotNull(transaction, "The transaction should discard because the balance was to small.");
+        assertTrue(transaction.processTransaction(), "The transaction should be processable.");
+        assertEquals(3f, senderWallet.getBalance(), "The sender should get the change back.");
+        assertEquals(12f, receiverWallet.getBalance(), "The receiver should get the funds.");
     }
 
 }
@@ -0,0 +1,158 @@
+package io.korti.chainresources.api;
+
+import io.korti.chainresources.TestUtil;
+import io.korti.chainresources.api.blockchain.ITransactionOutput;
+import io.korti.chainresources.api.impl.TransactionOutput;
+import io.korti.chainresources.api.impl.WriteAheadLog;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteAheadLogTest {
+
+    @Test
+    @DisplayName("Records are replayed in the order they got appended.")
+    public void replayInOrder(@TempDir Path directory) {
+        final PublicKey key = TestUtil.generateKeyPair().getPublic();
+        final ITransactionOutput first = new TransactionOutput(key, 1f, "A");
+        final ITransactionOutput second = new TransactionOutput(key, 2f, "B");
+
+        try (WriteAheadLog log = new WriteAheadLog(directory, WriteAheadLog.Durability.PER_BLOCK)) {
+            log.roll(0);
+            log.logUpdate(Collections.singletonList(first), Collections.emptyList());
+            log.roll(5);
+            log.logUpdate(Collections.singletonList(second), Collections.singletonList(first.getID()));
+        }
+
+        final List<String> replayed = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(directory, WriteAheadLog.Durability.PER_BLOCK)) {
+            log.replay(0, (added, removed) -> {
+                added.forEach(output -> replayed.add("+" + output.getID() + " " + output.getValue()));
+                removed.forEach(id -> replayed.add("-" + id));
+            });
+            assertTrue(log.hasFile(5), "The log should continue in the rolled file.");
+        }
+
+        assertEquals(3, replayed.size(), "Every change should be replayed.");
+        assertEquals("+" + first.getID() + " 1.0", replayed.get(0), "The first output is not right.");
+        assertEquals("+" + second.getID() + " 2.0", replayed.get(1), "The second output is not right.");
+        assertEquals("-" + first.getID(), replayed.get(2), "The spent output is not right.");
+    }
+
+    @Test
+    @DisplayName("A durable record is recovered without closing the log.")
+    public void recoverWithoutClosing(@TempDir Path directory) {
+        final ITransactionOutput output = new TransactionOutput(TestUtil.generateKeyPair().getPublic(), 1f, "A");
+
+        final WriteAheadLog crashed = new WriteAheadLog(directory, WriteAheadLog.Durability.PER_TRANSACTION);
+        crashed.roll(0);
+        crashed.awaitDurable(crashed.logUpdate(Collections.singletonList(output), Collections.emptyList()));
+        crashed.logUpdate(Collections.emptyList(), Collections.singletonList(output.getID())); // Never forced.
+
+        final List<ITransactionOutput> recovered = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(directory, WriteAheadLog.Durability.PER_TRANSACTION)) {
+            log.replay(0, (added, removed) -> recovered.addAll(added));
+        }
+
+        assertEquals(1, recovered.size(), "The forced record should be recovered.");
+        assertEquals(output.getID(), recovered.get(0).getID(), "The recovered output is not right.");
+    }
+
+    @Test
+    @DisplayName("The log stops after a failed write.")
+    public void stopAfterFailedWrite(@TempDir Path directory) throws Exception {
+        final ITransactionOutput output = new TransactionOutput(TestUtil.generateKeyPair().getPublic(), 1f, "A");
+        final WriteAheadLog log = new WriteAheadLog(directory, WriteAheadLog.Durability.PER_BLOCK);
+        log.roll(0);
+
+        final Field channel = WriteAheadLog.class.getDeclaredField("channel");
+        channel.setAccessible(true);
+        ((FileChannel) channel.get(log)).close();   // Every write fails from here on.
+
+        log.logUpdate(Collections.singletonList(output), Collections.emptyList());
+        assertThrows(UncheckedIOException.class, log::sync, "The failed write should be reported.");
+        assertThrows(UncheckedIOException.class,
+                () -> log.logUpdate(Collections.emptyList(), Collections.singletonList(output.getID())),
+                "No record should be appended behind the failed one.");
+        assertThrows(UncheckedIOException.class, () -> log.roll(1), "The log should not continue in a new file.");
+        assertThrows(UncheckedIOException.class, log::close, "Closing should report the failed write.");
+    }
+
+    @Test
+    @DisplayName("A not completely written record is dropped.")
+    public void dropBrokenRecord(@TempDir Path directory) throws Exception {
+        final PublicKey key = TestUtil.generateKeyPair().getPublic();
+        try (WriteAheadLog log = new WriteAheadLog(directory, WriteAheadLog.Durability.PER_BLOCK)) {
+            log.roll(0);
+            log.logUpdate(Collections.singletonList(new TransactionOutput(key, 1f, "A")), Collections.emptyList());
+            log.logUpdate(Collections.singletonList(new TransactionOutput(key, 2f, "B")), Collections.emptyList());
+        }
+        try (FileChannel channel = FileChannel.open(directory.resolve("wal-0.log"), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        final List<Float> values = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(directory, WriteAheadLog.Durability.PER_BLOCK)) {
+            log.logUpdate(Collections.singletonList(new TransactionOutput(key, 3f, "C")), Collections.emptyList());
+            log.sync();
+            log.replay(0, (added, removed) -> added.forEach(output -> values.add(output.getValue())));
+        }
+
+        assertEquals(2, values.size(), "The broken record should be dropped.");
+        assertEquals(1f, values.get(0), "The first record should be kept.");
+        assertEquals(3f, values.get(1), "The new record should be appended behind the first one.");
+    }
+
+    @Test
+    @DisplayName("Records of concurrent writers are all durable.")
+    public void concurrentWriters(@TempDir Path directory) throws Exception {
+        final PublicKey key = TestUtil.generateKeyPair().getPublic();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (WriteAheadLog log = new WriteAheadLog(directory, WriteAheadLog.Durability.PER_TRANSACTION)) {
+            log.roll(0);
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final ITransactionOutput output = new TransactionOutput(key, i, "T" + i);
+                futures.add(executor.submit(() -> log.awaitDurable(
+                        log.logUpdate(Collections.singletonList(output), Collections.emptyList()))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        final List<ITransactionOutput> replayed = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(directory, WriteAheadLog.Durability.PER_TRANSACTION)) {
+            log.replay(0, (added, removed) -> replayed.addAll(added));
+        }
+        assertEquals(200, replayed.size(), "Every record should be replayed.");
+    }
+
+    @Test
+    @DisplayName("Log needs a file before records can be appended.")
+    public void appendNeedsFile(@TempDir Path directory) {
+        try (WriteAheadLog log = new WriteAheadLog(directory, WriteAheadLog.Durability.TIMED)) {
+            assertFalse(log.isOpen(), "A new log has no file.");
+            assertThrows(IllegalStateException.class,
+                    () -> log.logUpdate(Collections.emptyList(), Collections.emptyList()));
+        }
+    }
+
+}